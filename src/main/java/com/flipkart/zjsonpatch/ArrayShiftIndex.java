@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the {@link Operation#ADD} and {@link Operation#REMOVE} diffs that target array
+ * elements, grouped by parent array.
+ *
+ * <p>Every such diff shifts the indexes of its siblings: an add by -1 and a remove by +1 when
+ * translating a path backwards across it. Per parent array, these shifts are kept in a Fenwick
+ * tree ordered by diff position, so the total shift across any range of diffs is resolved in
+ * O(log n) rather than by rescanning the diffs in between. Diffs that are merged into a move
+ * are {@link #clear(int) cleared} and stop contributing.
+ */
+final class ArrayShiftIndex {
+
+    private final Map<JsonPointer, Events> eventsByParent = new HashMap<JsonPointer, Events>();
+    private final Events[] eventsAt;
+    private final int[] slotAt;
+
+    ArrayShiftIndex(Diff[] diffs) {
+        eventsAt = new Events[diffs.length];
+        slotAt = new int[diffs.length];
+
+        Map<JsonPointer, int[]> counts = new HashMap<JsonPointer, int[]>();
+        JsonPointer[] parents = new JsonPointer[diffs.length];
+        for (int i = 0; i < diffs.length; i++) {
+            if (!isShifting(diffs[i])) continue;
+
+            parents[i] = diffs[i].getPath().getParent();
+            int[] count = counts.get(parents[i]);
+            if (count == null) counts.put(parents[i], count = new int[1]);
+            count[0]++;
+        }
+
+        for (int i = 0; i < diffs.length; i++) {
+            if (parents[i] == null) continue;
+
+            Events events = eventsByParent.get(parents[i]);
+            if (events == null) {
+                events = new Events(counts.get(parents[i])[0]);
+                eventsByParent.put(parents[i], events);
+            }
+            eventsAt[i] = events;
+            slotAt[i] = events.append(i, Operation.ADD == diffs[i].getOperation() ? -1 : 1);
+        }
+    }
+
+    private static boolean isShifting(Diff diff) {
+        if (Operation.ADD != diff.getOperation() && Operation.REMOVE != diff.getOperation())
+            return false;
+        JsonPointer path = diff.getPath();
+        return !path.isRoot() && path.last().isArrayIndex();
+    }
+
+    /**
+     * Stops the diff at the given position from contributing to any shift.
+     */
+    void clear(int position) {
+        Events events = eventsAt[position];
+        if (events != null) {
+            events.set(slotAt[position], 0);
+            eventsAt[position] = null;
+        }
+    }
+
+    /**
+     * Returns the net index shift that the diffs within {@code [from, to]} apply to the
+     * elements of the array at {@code parent}.
+     */
+    int shift(JsonPointer parent, int from, int to) {
+        if (from > to) return 0;
+        Events events = eventsByParent.get(parent);
+        return events == null ? 0 : events.sum(from, to);
+    }
+
+    /** Shifts of the diffs under a single parent array, in diff order. */
+    private static final class Events {
+        private final int[] positions;
+        private final int[] weights;
+        private final int[] tree;
+        private int size;
+
+        private Events(int capacity) {
+            positions = new int[capacity];
+            weights = new int[capacity];
+            tree = new int[capacity + 1];
+        }
+
+        private int append(int position, int weight) {
+            int slot = size++;
+            positions[slot] = position;
+            set(slot, weight);
+            return slot;
+        }
+
+        private void set(int slot, int weight) {
+            int delta = weight - weights[slot];
+            weights[slot] = weight;
+            for (int i = slot + 1; i < tree.length; i += i & -i)
+                tree[i] += delta;
+        }
+
+        private int prefix(int count) {
+            int sum = 0;
+            for (int i = count; i > 0; i -= i & -i)
+                sum += tree[i];
+            return sum;
+        }
+
+        private int sum(int from, int to) {
+            int lo = lowerBound(from);
+            int hi = lowerBound(to + 1);
+            return prefix(hi) - prefix(lo);
+        }
+
+        private int lowerBound(int position) {
+            int idx = Arrays.binarySearch(positions, 0, size, position);
+            return idx >= 0 ? idx : -idx - 1;
+        }
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+
+/**
+ * A JSON patch validated and parsed once, ready to be applied any number of times.
+ *
+ * <pre>
+ *      CompiledPatch patch = JsonPatch.compile(patchNode);
+ *      JsonNode target = patch.apply(source);
+ * </pre>
+ *
+ * <p>Operations are resolved, paths are parsed into pointers and values are copied when the patch
+ * is compiled, so applying it neither re-validates the patch document nor depends on later changes
+ * to it. Instances are immutable and may be shared between threads.
+ *
+ * <p>{@link Operation#TEST} operations that cannot be affected by the operations preceding them are
+ * found when the patch is compiled. The applying methods that leave {@code source} unchanged on
+ * failure evaluate them against the untouched source first, so a patch whose tests fail is rejected
+ * without copying the whole source.
+ *
+ * <p>Values of {@link Operation#ADD} and {@link Operation#REPLACE} operations are copied into the
+ * target on every application, while {@link Operation#TEST} values are compared as they are.
+ *
+ * <p>Runs of {@link Operation#ADD} and {@link Operation#REMOVE} operations on elements of the same
+ * array, as found in diffs of large arrays, are also found when the patch is compiled. Where the
+ * target allows, each run is applied in a single pass over the array instead of shifting its
+ * elements once per operation.
+ *
+ * @see JsonPatch#compile(JsonNode, EnumSet)
+ */
+public final class CompiledPatch {
+
+    private final Operation[] operations;
+    private final JsonPointer[] paths;
+    private final JsonPointer[] froms;
+    private final JsonNode[] values;
+    private final EnumSet<CompatibilityFlags> flags;
+    // Whether the values may be inserted into the target without a copy; the patch is then applied once
+    private final boolean transfer;
+    // Indexes of the TEST operations that can be evaluated against the source, in patch order
+    private final int[] preflight;
+    // Index of the first operation that modifies the document
+    private final int firstChange;
+    // End of the run of array edits starting at each operation, 0 where none starts
+    private final int[] arrayRuns;
+
+    // Shortest run of array edits that is applied in a single pass
+    private static final int MIN_ARRAY_RUN = 8;
+
+    private CompiledPatch(Operation[] operations, JsonPointer[] paths, JsonPointer[] froms, JsonNode[] values,
+                          EnumSet<CompatibilityFlags> flags, boolean transfer) {
+        this.operations = operations;
+        this.paths = paths;
+        this.froms = froms;
+        this.values = values;
+        this.flags = flags;
+        this.transfer = transfer;
+        this.preflight = preflightTests(operations, paths, froms);
+        int i = 0;
+        while (i < operations.length && operations[i] == Operation.TEST)
+            i++;
+        this.firstChange = i;
+        this.arrayRuns = arrayRuns(operations, paths);
+    }
+
+    /**
+     * Validates and parses a patch document.
+     *
+     * @param freeze whether to copy the values out of the patch document; a patch that is applied
+     *               right away and then dropped can refer to them directly
+     */
+    static CompiledPatch compile(JsonNode patch, EnumSet<CompatibilityFlags> flags, boolean freeze)
+            throws InvalidJsonPatchException {
+        return compile(patch, flags, freeze, false, null);
+    }
+
+    /**
+     * Validates and parses a patch document, looking up its paths in {@code cache} if one is given.
+     */
+    static CompiledPatch compile(JsonNode patch, EnumSet<CompatibilityFlags> flags, boolean freeze,
+                                 JsonPointerCache cache) throws InvalidJsonPatchException {
+        return compile(patch, flags, freeze, false, cache);
+    }
+
+    /**
+     * Validates and parses a patch document that the caller hands over: its values are inserted into
+     * the target as they are, so the returned patch must be applied at most once and the patch document
+     * must not be used afterwards.
+     */
+    static CompiledPatch compileTransferring(JsonNode patch, EnumSet<CompatibilityFlags> flags,
+                                             JsonPointerCache cache) throws InvalidJsonPatchException {
+        return compile(patch, flags, false, true, cache);
+    }
+
+    private static CompiledPatch compile(JsonNode patch, EnumSet<CompatibilityFlags> flags, boolean freeze,
+                                         boolean transfer, JsonPointerCache cache) throws InvalidJsonPatchException {
+
+        if (!patch.isArray())
+            throw new InvalidJsonPatchException("Invalid JSON Patch payload (not an array)");
+
+        int size = patch.size();
+        Operation[] operations = new Operation[size];
+        JsonPointer[] paths = new JsonPointer[size];
+        JsonPointer[] froms = new JsonPointer[size];
+        JsonNode[] values = new JsonNode[size];
+
+        Iterator<JsonNode> nodes = patch.iterator();
+        for (int i = 0; i < size; i++) {
+            JsonNode jsonNode = nodes.next();
+            if (!jsonNode.isObject()) throw new InvalidJsonPatchException("Invalid JSON Patch payload (not an object)");
+            Operation operation = Operation.fromRfcName(getPatchAttr(jsonNode, Constants.OP).textValue());
+            operations[i] = operation;
+            paths[i] = parsePointer(getPatchAttr(jsonNode, Constants.PATH).textValue(), cache);
+
+            switch (operation) {
+                case ADD:
+                case REPLACE:
+                case TEST: {
+                    JsonNode value;
+                    if (!flags.contains(CompatibilityFlags.MISSING_VALUES_AS_NULLS))
+                        value = getPatchAttr(jsonNode, Constants.VALUE);
+                    else
+                        value = getPatchAttrWithDefault(jsonNode, Constants.VALUE, NullNode.getInstance());
+                    values[i] = freeze ? value.deepCopy() : value;
+                    break;
+                }
+
+                case MOVE:
+                case COPY:
+                    froms[i] = parsePointer(getPatchAttr(jsonNode, Constants.FROM).textValue(), cache);
+                    break;
+
+                default:
+                    break;
+            }
+        }
+        return new CompiledPatch(operations, paths, froms, values, flags.clone(), transfer);
+    }
+
+    private static JsonPointer parsePointer(String path, JsonPointerCache cache) {
+        return cache == null || path == null ? JsonPointer.parse(path) : cache.parse(path);
+    }
+
+    private static JsonNode getPatchAttr(JsonNode jsonNode, String attr) {
+        JsonNode child = jsonNode.get(attr);
+        if (child == null)
+            throw new InvalidJsonPatchException("Invalid JSON Patch payload (missing '" + attr + "' field)");
+        return child;
+    }
+
+    private static JsonNode getPatchAttrWithDefault(JsonNode jsonNode, String attr, JsonNode defaultValue) {
+        JsonNode child = jsonNode.get(attr);
+        if (child == null)
+            return defaultValue;
+        else
+            return child;
+    }
+
+    /**
+     * Finds the TEST operations whose outcome on the source is the outcome they will have in place:
+     * those for which every path modified by a preceding operation diverges from the tested path.
+     */
+    private static int[] preflightTests(Operation[] operations, JsonPointer[] paths, JsonPointer[] froms) {
+        int[] tests = new int[operations.length];
+        int count = 0;
+        for (int i = 0; i < operations.length; i++) {
+            if (operations[i] == Operation.TEST && unaffectedByPrecedingChanges(i, operations, paths, froms))
+                tests[count++] = i;
+        }
+        return Arrays.copyOf(tests, count);
+    }
+
+    private static boolean unaffectedByPrecedingChanges(int test, Operation[] operations, JsonPointer[] paths,
+                                                        JsonPointer[] froms) {
+        JsonPointer path = paths[test];
+        for (int i = 0; i < test; i++) {
+            switch (operations[i]) {
+                case TEST:
+                    break;
+                case MOVE:
+                    if (!unaffected(path, froms[i]) || !unaffected(path, paths[i]))
+                        return false;
+                    break;
+                default:
+                    if (!unaffected(path, paths[i]))
+                        return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the runs of at least {@link #MIN_ARRAY_RUN} consecutive element inserts and removes that share
+     * a parent. Whether the parent is an array is only known when the patch is applied.
+     */
+    private static int[] arrayRuns(Operation[] operations, JsonPointer[] paths) {
+        int[] runs = null;
+        int i = 0;
+        while (i < operations.length) {
+            int end = i;
+            if (isArrayEdit(operations[i], paths[i])) {
+                end = i + 1;
+                while (end < operations.length && isArrayEdit(operations[end], paths[end])
+                        && paths[end].hasSameParent(paths[i]))
+                    end++;
+            }
+            if (end - i >= MIN_ARRAY_RUN) {
+                if (runs == null)
+                    runs = new int[operations.length];
+                runs[i] = end;
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return runs;
+    }
+
+    private static boolean isArrayEdit(Operation operation, JsonPointer path) {
+        if (path.isRoot() || !path.last().isArrayIndex())
+            return false;
+        // Removing "-" does nothing, leave that to the regular path
+        return operation == Operation.ADD
+                || operation == Operation.REMOVE && path.last().getIndex() != JsonPointer.LAST_INDEX;
+    }
+
+    /**
+     * Whether the value at {@code path} certainly survives a change at {@code changed}. The paths must
+     * diverge above the changed location, or at it between two object fields: inserting or removing an
+     * array element shifts its siblings.
+     */
+    static boolean unaffected(JsonPointer path, JsonPointer changed) {
+        int last = changed.size() - 1;
+        for (int i = 0; i < path.size() && i <= last; i++) {
+            JsonPointer.RefToken token = path.get(i);
+            JsonPointer.RefToken changedToken = changed.get(i);
+            if (!token.equals(changedToken))
+                return i < last || !token.isArrayIndex() && !changedToken.isArrayIndex();
+        }
+        return false;
+    }
+
+    /** Returns the number of operations in this patch. */
+    public int size() {
+        return operations.length;
+    }
+
+    Operation operation(int i) {
+        return operations[i];
+    }
+
+    JsonPointer path(int i) {
+        return paths[i];
+    }
+
+    /** Returns the {@code from} path of a MOVE or COPY operation, {@code null} for others */
+    JsonPointer from(int i) {
+        return froms[i];
+    }
+
+    /** Returns the value of an ADD, REPLACE or TEST operation, {@code null} for others */
+    JsonNode value(int i) {
+        return values[i];
+    }
+
+    /**
+     * Applies this patch to a copy of {@code source}, which is left unmodified.
+     *
+     * @return the patched document
+     * @throws JsonPatchApplicationException if an operation cannot be applied
+     */
+    public JsonNode apply(JsonNode source) throws JsonPatchApplicationException {
+        try {
+            return applyToCopy(source);
+        } catch (JsonPatchApplicationException e) {
+            throw e.withStackTrace();
+        }
+    }
+
+    /**
+     * Applies this patch like {@link #apply(JsonNode)}, but reports an operation that cannot be applied
+     * in the result instead of throwing. Such failures are still raised internally, each allocating an
+     * exception, but without filling in a stack trace or formatting a message: the reason is only
+     * rendered by {@link JsonPatchResult#getReason()}. This makes it the cheaper choice when patches
+     * guarded by {@link Operation#TEST} operations are routinely expected to fail.
+     *
+     * @return the patched document, or the failing operation
+     */
+    public JsonPatchResult tryApply(JsonNode source) {
+        try {
+            return JsonPatchResult.applied(applyToCopy(source));
+        } catch (JsonPatchApplicationException e) {
+            return failed(e);
+        }
+    }
+
+    private JsonNode applyToCopy(JsonNode source) {
+        preflight(source);
+        CopyingApplyProcessor processor = new CopyingApplyProcessor(source, flags);
+        process(processor, true);
+        return processor.result();
+    }
+
+    /**
+     * Applies this patch to {@code source} without modifying it and without copying it as a whole.
+     * Only the containers along the paths the patch modifies are copied; all other subtrees of the
+     * result are shared with {@code source}. Modifying either document afterwards may therefore
+     * affect the other one.
+     *
+     * @return the patched document
+     * @throws JsonPatchApplicationException if an operation cannot be applied
+     */
+    public JsonNode applyCopyOnWrite(JsonNode source) throws JsonPatchApplicationException {
+        try {
+            preflight(source);
+            CopyOnWriteApplyProcessor processor = new CopyOnWriteApplyProcessor(source, flags);
+            process(processor, true);
+            return processor.result();
+        } catch (JsonPatchApplicationException e) {
+            throw e.withStackTrace();
+        }
+    }
+
+    /**
+     * Applies this patch to {@code source}, modifying it. Operations preceding a failing one remain applied.
+     *
+     * @throws JsonPatchApplicationException if an operation cannot be applied
+     */
+    public void applyInPlace(JsonNode source) throws JsonPatchApplicationException {
+        try {
+            process(new InPlaceApplyProcessor(source, flags));
+        } catch (JsonPatchApplicationException e) {
+            throw e.withStackTrace();
+        }
+    }
+
+    /**
+     * Applies this patch like {@link #applyInPlace(JsonNode)}, but reports an operation that cannot be
+     * applied in the result instead of throwing. Operations preceding a failing one remain applied.
+     *
+     * @return the patched document, or the failing operation
+     * @see #tryApply(JsonNode)
+     */
+    public JsonPatchResult tryApplyInPlace(JsonNode source) {
+        InPlaceApplyProcessor processor = new InPlaceApplyProcessor(source, flags);
+        try {
+            process(processor);
+            return JsonPatchResult.applied(processor.result());
+        } catch (JsonPatchApplicationException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Applies this patch to {@code source}, modifying it, with all-or-nothing semantics: if any operation
+     * fails, every modification made by the preceding ones is reverted before the exception is rethrown.
+     * This costs an undo log entry per modification instead of a copy of the document.
+     *
+     * @throws JsonPatchApplicationException if an operation cannot be applied; {@code source} is then unchanged
+     */
+    public void applyInPlaceAtomically(JsonNode source) throws JsonPatchApplicationException {
+        try {
+            preflight(source);
+            TransactionalApplyProcessor processor = new TransactionalApplyProcessor(source, flags);
+            try {
+                process(processor, true);
+            } catch (RuntimeException e) {
+                processor.rollback();
+                throw e;
+            }
+        } catch (JsonPatchApplicationException e) {
+            throw e.withStackTrace();
+        }
+    }
+
+    /**
+     * Computes the patch that reverts this one: applied to the result of applying this patch to
+     * {@code source}, it yields {@code source} again. This patch is applied copy-on-write to find the
+     * values it overwrites, so the cost depends on the patch rather than on the size of the document.
+     * {@code source} is not modified, and the values of the inverse may share nodes with it.
+     *
+     * @return the inverse patch
+     * @throws JsonPatchApplicationException if an operation cannot be applied to {@code source}
+     */
+    public JsonNode invert(JsonNode source) throws JsonPatchApplicationException {
+        try {
+            preflight(source);
+            InvertingApplyProcessor processor = new InvertingApplyProcessor(source, flags);
+            process(processor, true);
+            return processor.inverse();
+        } catch (JsonPatchApplicationException e) {
+            throw e.withStackTrace();
+        }
+    }
+
+    private JsonPatchResult failed(JsonPatchApplicationException e) {
+        return JsonPatchResult.failed(e, e.index >= 0 ? operations[e.index] : e.operation);
+    }
+
+    /**
+     * Evaluates the preflight TEST operations against {@code source} without modifying it. When a test
+     * preceded by modifications fails, one of those may fail first; they are replayed copy-on-write up to
+     * the test so that the error reported is the one applying the patch in order would report.
+     *
+     * @throws JsonPatchApplicationException if the patch fails at or before a preflight test
+     */
+    private void preflight(JsonNode source) throws JsonPatchApplicationException {
+        if (preflight.length == 0)
+            return;
+        InPlaceApplyProcessor reader = new InPlaceApplyProcessor(source, flags);
+        for (int test : preflight) {
+            try {
+                process(reader, test);
+            } catch (RuntimeException e) {
+                if (test >= firstChange) {
+                    CopyOnWriteApplyProcessor replay = new CopyOnWriteApplyProcessor(source, flags);
+                    for (int i = 0; i <= test; i++) {
+                        process(replay, i);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    void process(JsonPatchProcessor processor) throws JsonPatchApplicationException {
+        process(processor, false);
+    }
+
+    /**
+     * @param preflighted whether the preflight tests passed and are to be skipped
+     */
+    private void process(JsonPatchProcessor processor, boolean preflighted) throws JsonPatchApplicationException {
+        int next = 0;
+        for (int i = 0; i < operations.length; i++) {
+            if (preflighted && next < preflight.length && preflight[next] == i) {
+                next++;
+                continue;
+            }
+            if (arrayRuns != null && arrayRuns[i] != 0 && processor instanceof InPlaceApplyProcessor) {
+                int applied = editArray((InPlaceApplyProcessor) processor, i, arrayRuns[i]);
+                if (applied > 0) {
+                    i += applied - 1;
+                    continue;
+                }
+            }
+            process(processor, i);
+        }
+    }
+
+    /**
+     * Applies the leading operations of the run of array edits {@code [from, to)} in a single pass.
+     *
+     * @return the number of operations applied; the next one is to be applied on its own
+     */
+    private int editArray(InPlaceApplyProcessor processor, int from, int to) {
+        int[] indexes = new int[to - from];
+        JsonNode[] inserted = new JsonNode[to - from];
+        for (int i = from; i < to; i++) {
+            indexes[i - from] = paths[i].last().getIndex();
+            if (operations[i] == Operation.ADD)
+                inserted[i - from] = values[i];
+        }
+        // Only the values of the edits that are applied get copied
+        return processor.editArray(paths[from], indexes, inserted, !transfer);
+    }
+
+    private void process(JsonPatchProcessor processor, int i) throws JsonPatchApplicationException {
+        Operation operation = operations[i];
+        JsonPointer path = paths[i];
+        try {
+            switch (operation) {
+                case REMOVE:
+                    processor.remove(path);
+                    break;
+
+                case ADD:
+                    processor.add(path, transfer ? values[i] : values[i].deepCopy());
+                    break;
+
+                case REPLACE:
+                    processor.replace(path, transfer ? values[i] : values[i].deepCopy());
+                    break;
+
+                case MOVE:
+                    processor.move(froms[i], path);
+                    break;
+
+                case COPY:
+                    processor.copy(froms[i], path);
+                    break;
+
+                case TEST:
+                    processor.test(path, values[i]);
+                    break;
+            }
+        } catch (JsonPointerEvaluationException e) {
+            JsonPatchApplicationException failure = JsonPatchApplicationException.of(e, operation);
+            failure.index = i;
+            throw failure;
+        } catch (JsonPatchApplicationException e) {
+            e.index = i;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Iterator;
+
+/**
+ * Index of the subtrees left unchanged between source and target, which are candidates for
+ * {@link Operation#COPY} operations.
+ *
+ * <p>Candidates are stored in an open addressing table keyed by their 64-bit
+ * {@link NodeDigests structural digest}, so neither insertion nor lookup re-hashes a subtree.
+ * Subtrees with fewer than {@code minSize} nodes are not indexed at all. When several unchanged
+ * subtrees are equal, the first one encountered (in document order) wins.
+ */
+final class CopyIndex {
+
+    private final NodeDigests digests;
+    private final int minSize;
+    private long[] keys = new long[16];
+    private Candidate[] slots = new Candidate[16];
+    private int size;
+
+    private CopyIndex(NodeDigests digests, int minSize) {
+        this.digests = digests;
+        this.minSize = minSize;
+    }
+
+    /**
+     * Indexes every maximal subtree that is equal at the same path in source and target.
+     */
+    static CopyIndex build(NodeDigests digests, int minSize, JsonNode source, JsonNode target) {
+        CopyIndex index = new CopyIndex(digests, minSize);
+        index.computeUnchangedValues(JsonPointer.ROOT, source, target);
+        return index;
+    }
+
+    /**
+     * Returns the path of an unchanged subtree equal to the given value, or {@code null}.
+     */
+    JsonPointer find(JsonNode value) {
+        if (digests.size(value) < minSize)
+            return null;
+
+        long digest = digests.digest(value);
+        int mask = slots.length - 1;
+        for (int i = slot(digest, mask); slots[i] != null; i = (i + 1) & mask) {
+            if (keys[i] != digest) continue;
+            for (Candidate candidate = slots[i]; candidate != null; candidate = candidate.next) {
+                if (candidate.node.equals(value))
+                    return candidate.path;
+            }
+            return null;
+        }
+        return null;
+    }
+
+    private void computeUnchangedValues(JsonPointer path, JsonNode source, JsonNode target) {
+        if (digests.equal(source, target)) {
+            if (digests.size(target) >= minSize)
+                put(target, path);
+            return;
+        }
+
+        final NodeType firstType = NodeType.getNodeType(source);
+        final NodeType secondType = NodeType.getNodeType(target);
+
+        if (firstType == secondType) {
+            switch (firstType) {
+                case OBJECT:
+                    computeObject(path, source, target);
+                    break;
+                case ARRAY:
+                    computeArray(path, source, target);
+                    break;
+                default:
+                    /* nothing */
+            }
+        }
+    }
+
+    private void computeArray(JsonPointer path, JsonNode source, JsonNode target) {
+        final int size = Math.min(source.size(), target.size());
+
+        for (int i = 0; i < size; i++) {
+            JsonPointer currPath = path.append(i);
+            computeUnchangedValues(currPath, source.get(i), target.get(i));
+        }
+    }
+
+    private void computeObject(JsonPointer path, JsonNode source, JsonNode target) {
+        final Iterator<String> firstFields = source.fieldNames();
+        while (firstFields.hasNext()) {
+            String name = firstFields.next();
+            if (target.has(name)) {
+                JsonPointer currPath = path.append(name);
+                computeUnchangedValues(currPath, source.get(name), target.get(name));
+            }
+        }
+    }
+
+    private void put(JsonNode node, JsonPointer path) {
+        long digest = digests.digest(node);
+        int mask = slots.length - 1;
+        int i = slot(digest, mask);
+        for (; slots[i] != null; i = (i + 1) & mask) {
+            if (keys[i] != digest) continue;
+            // Same digest: keep the first path of an equal node, chain nodes that merely collide
+            Candidate candidate = slots[i];
+            while (true) {
+                if (candidate.node.equals(node)) return;
+                if (candidate.next == null) break;
+                candidate = candidate.next;
+            }
+            candidate.next = new Candidate(node, path);
+            return;
+        }
+        keys[i] = digest;
+        slots[i] = new Candidate(node, path);
+        if (++size * 2 > slots.length)
+            grow();
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Candidate[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new Candidate[oldSlots.length * 2];
+        int mask = slots.length - 1;
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] == null) continue;
+            int i = slot(oldKeys[j], mask);
+            while (slots[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            slots[i] = oldSlots[j];
+        }
+    }
+
+    private static int slot(long digest, int mask) {
+        return (int) (digest ^ (digest >>> 32)) & mask;
+    }
+
+    private static final class Candidate {
+        private final JsonNode node;
+        private final JsonPointer path;
+        private Candidate next;
+
+        private Candidate(JsonNode node, JsonPointer path) {
+            this.node = node;
+            this.path = path;
+        }
+    }
+}
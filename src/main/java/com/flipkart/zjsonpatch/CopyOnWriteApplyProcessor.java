@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a patch without modifying the source document and without copying all of it.
+ *
+ * <p>Before a container is modified, each container on the path from the root down to it is
+ * replaced by a shallow copy, unless it already is a copy made during this application (or part
+ * of a value inserted by the patch). Subtrees the patch doesn't touch are shared between the source
+ * and the result, so the cost is proportional to the number of operations times the depth of the
+ * paths they touch rather than to the size of the document.
+ */
+class CopyOnWriteApplyProcessor extends InPlaceApplyProcessor {
+
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    /** Containers that are not part of the source document and may be modified directly */
+    private final Set<JsonNode> owned = Collections.newSetFromMap(new IdentityHashMap<JsonNode, Boolean>());
+
+    CopyOnWriteApplyProcessor(JsonNode target, EnumSet<CompatibilityFlags> flags) {
+        super(target, flags);
+    }
+
+    @Override
+    public void add(JsonPointer path, JsonNode value) throws JsonPointerEvaluationException {
+        own(value);
+        super.add(path, value);
+    }
+
+    @Override
+    public void replace(JsonPointer path, JsonNode value) throws JsonPointerEvaluationException {
+        own(value);
+        super.replace(path, value);
+    }
+
+    @Override
+    int editArray(JsonPointer path, int[] indexes, JsonNode[] values, boolean copyValues) {
+        int applied = super.editArray(path, indexes, values, copyValues);
+        for (int i = 0; i < applied; i++) {
+            if (values[i] != null) own(values[i]);
+        }
+        return applied;
+    }
+
+    @Override
+    public void copy(JsonPointer fromPath, JsonPointer toPath) throws JsonPointerEvaluationException {
+        JsonNode valueNode = resolve(fromPath);
+        // Source nodes are never modified and can appear twice; nodes this processor may modify can't
+        if (owned.contains(valueNode)) {
+            valueNode = valueNode.deepCopy();
+            own(valueNode);
+        }
+        set(toPath, valueNode, Operation.COPY);
+    }
+
+    @Override
+    JsonNode parentOf(JsonPointer path) throws JsonPointerEvaluationException {
+        // Report missing nodes exactly like an in-place application would
+        super.parentOf(path);
+
+        // Swap the copies in for the resolved containers, keeping the cursor on them
+        int depth = path.size() - 1;
+        for (int i = 0; i <= depth; i++) {
+            JsonNode node = cursor.node(i);
+            JsonNode copy = writable(node);
+            if (copy == node)
+                continue;
+            if (i == 0) {
+                target = copy;
+            } else {
+                JsonNode parent = cursor.node(i - 1);
+                JsonPointer.RefToken token = path.get(i - 1);
+                if (parent.isArray())
+                    ((ArrayNode) parent).set(token.getIndex(), copy);
+                else
+                    ((ObjectNode) parent).set(token.getField(), copy);
+            }
+            cursor.replace(i, copy);
+        }
+        return cursor.node(depth);
+    }
+
+    /**
+     * Returns a copy of {@code value} that later operations of this application can't modify. Only the
+     * containers this processor may modify are copied; the source nodes under them are shared.
+     */
+    JsonNode snapshot(JsonNode value) {
+        if (!value.isContainerNode() || !owned.contains(value))
+            return value;
+        if (value.isArray()) {
+            ArrayNode array = FACTORY.arrayNode(value.size());
+            for (JsonNode element : value) {
+                array.add(snapshot(element));
+            }
+            return array;
+        }
+        ObjectNode object = FACTORY.objectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = value.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            object.set(field.getKey(), snapshot(field.getValue()));
+        }
+        return object;
+    }
+
+    /**
+     * Marks every container of a value the patch inserts as owned, so that later operations modify it
+     * in place instead of copying its nested containers. Inserted values are never shared with the
+     * source, and marking one costs no more than copying it did.
+     */
+    private void own(JsonNode value) {
+        if (!value.isContainerNode())
+            return;
+        owned.add(value);
+        for (JsonNode child : value) {
+            own(child);
+        }
+    }
+
+    private JsonNode writable(JsonNode node) {
+        if (!node.isContainerNode() || owned.contains(node))
+            return node;
+
+        JsonNode copy;
+        if (node.isArray()) {
+            ArrayNode array = FACTORY.arrayNode(node.size());
+            for (JsonNode element : node) {
+                array.add(element);
+            }
+            copy = array;
+        } else {
+            ObjectNode object = FACTORY.objectNode();
+            object.setAll((ObjectNode) node);
+            copy = object;
+        }
+        owned.add(copy);
+        return copy;
+    }
+}
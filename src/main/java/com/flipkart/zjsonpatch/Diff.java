@@ -26,7 +26,7 @@ class Diff {
     private final Operation operation;
     private final JsonPointer path;
     private final JsonNode value;
-    private JsonPointer toPath; //only to be used in move operation
+    private JsonPointer toPath; //only to be used in move and copy operations
     private final JsonNode srcValue; // only used in replace operation
 
     Diff(Operation operation, JsonPointer path, JsonNode value) {
@@ -44,6 +44,14 @@ class Diff {
         this.srcValue = null;
     }
     
+    Diff(Operation operation, JsonPointer fromPath, JsonPointer toPath, JsonNode value) {
+        this.operation = operation;
+        this.path = fromPath;
+        this.toPath = toPath;
+        this.value = value;
+        this.srcValue = null;
+    }
+
     Diff(Operation operation, JsonPointer path, JsonNode srcValue, JsonNode value) {
         this.operation = operation;
         this.path = path;
@@ -78,4 +86,25 @@ class Diff {
     public JsonNode getSrcValue(){
         return srcValue;
     }
+
+    /**
+     * Returns the diff that reverts this one when applied right after it, or {@code null} for a test.
+     * Reverting a copy needs the copied value, see {@link #Diff(Operation, JsonPointer, JsonPointer, JsonNode)}.
+     */
+    Diff inverse() {
+        switch (operation) {
+            case ADD:
+                return new Diff(Operation.REMOVE, path, value);
+            case REMOVE:
+                return new Diff(Operation.ADD, path, value);
+            case REPLACE:
+                return new Diff(Operation.REPLACE, path, value, srcValue);
+            case MOVE:
+                return new Diff(Operation.MOVE, toPath, path);
+            case COPY:
+                return new Diff(Operation.REMOVE, toPath, value);
+            default:
+                return null;
+        }
+    }
 }
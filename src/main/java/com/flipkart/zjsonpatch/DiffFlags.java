@@ -80,7 +80,8 @@ public enum DiffFlags {
     /**
      * This flag instructs the difference generator to treat arrays that contain objects with an id
      * as sets. This means that the order does not matter and the object is considered updated only if
-     * there is another object with the same "id", "_id" or "uuid".
+     * there is another object with the same "id", "_id" or "uuid". Arrays whose elements can't be
+     * keyed, because an element lacks the id of the first one or an id repeats, are compared by position.
      */
     TREAT_ARRAYS_AS_SETS,
 
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Receives the operations of a diff one at a time, in patch order, instead of as a single
+ * {@code ArrayNode}. See {@link JsonDiffer#diff(JsonNode, JsonNode, DiffSink)}.
+ *
+ * <p>Paths are JSON pointer strings and values are exactly what the corresponding patch fields
+ * would hold; they may be shared with the target document and must not be modified.
+ */
+public interface DiffSink {
+    void add(String path, JsonNode value);
+
+    /**
+     * @param value the removed value, or {@code null} with {@link DiffFlags#OMIT_VALUE_ON_REMOVE}
+     */
+    void remove(String path, JsonNode value);
+
+    /**
+     * @param value     the <i>value</i> field, which holds the original value with
+     *                  {@link DiffFlags#ADD_ORIGINAL_VALUE_ON_REPLACE_AS_VALUE}
+     * @param fromValue the original value with {@link DiffFlags#ADD_ORIGINAL_VALUE_ON_REPLACE}, else {@code null}
+     */
+    void replace(String path, JsonNode value, JsonNode fromValue);
+
+    void move(String from, String path);
+
+    void copy(String from, String path);
+
+    void test(String path, JsonNode value);
+}
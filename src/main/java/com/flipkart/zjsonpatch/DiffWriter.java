@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumSet;
+
+/**
+ * Renders the diffs produced by {@link JsonDiff} in their final form, honouring the output flags
+ * ({@link DiffFlags#OMIT_VALUE_ON_REMOVE}, the original value flags on replace and
+ * {@link DiffFlags#ADD_EXPLICIT_REMOVE_ADD_ON_REPLACE}).
+ */
+abstract class DiffWriter {
+
+    final EnumSet<DiffFlags> flags;
+
+    DiffWriter(EnumSet<DiffFlags> flags) {
+        this.flags = flags;
+    }
+
+    final void write(Diff diff) {
+        if (flags.contains(DiffFlags.ADD_EXPLICIT_REMOVE_ADD_ON_REPLACE)
+                && Operation.REPLACE == diff.getOperation() && diff.getSrcValue() != null) {
+            //Split into two #REMOVE and #ADD
+            writeDiff(new Diff(Operation.REMOVE, diff.getPath(), diff.getSrcValue()));
+            writeDiff(new Diff(Operation.ADD, diff.getPath(), diff.getValue()));
+        } else {
+            writeDiff(diff);
+        }
+    }
+
+    abstract void writeDiff(Diff diff);
+
+    JsonNode removedValue(Diff diff) {
+        return flags.contains(DiffFlags.OMIT_VALUE_ON_REMOVE) ? null : diff.getValue();
+    }
+
+    JsonNode fromValue(Diff diff) {
+        return flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE) ? diff.getSrcValue() : null;
+    }
+
+    JsonNode replacedValue(Diff diff) {
+        if (!flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE)
+                && flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE_AS_VALUE)) {
+            return diff.getSrcValue();
+        }
+        return diff.getValue();
+    }
+
+    /** Collects the patch into an {@code ArrayNode}. */
+    static final class ToArrayNode extends DiffWriter {
+        private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+        private final ArrayNode patch = FACTORY.arrayNode();
+
+        ToArrayNode(EnumSet<DiffFlags> flags) {
+            super(flags);
+        }
+
+        ArrayNode getPatch() {
+            return patch;
+        }
+
+        @Override
+        void writeDiff(Diff diff) {
+            ObjectNode jsonNode = patch.addObject();
+            jsonNode.put(Constants.OP, diff.getOperation().rfcName());
+
+            switch (diff.getOperation()) {
+                case MOVE:
+                case COPY:
+                    jsonNode.put(Constants.FROM, diff.getPath().toString());    // required {from} only in case of Move Operation
+                    jsonNode.put(Constants.PATH, diff.getToPath().toString());  // destination Path
+                    break;
+
+                case REMOVE:
+                    jsonNode.put(Constants.PATH, diff.getPath().toString());
+                    if (!flags.contains(DiffFlags.OMIT_VALUE_ON_REMOVE))
+                        jsonNode.set(Constants.VALUE, diff.getValue());
+                    break;
+
+                case REPLACE:
+                    if (flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE)) {
+                        jsonNode.set(Constants.FROM_VALUE, diff.getSrcValue());
+                    } else if (flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE_AS_VALUE)) {
+                        jsonNode.set(Constants.VALUE, diff.getSrcValue());
+                    }
+                case ADD:
+                case TEST:
+                    jsonNode.put(Constants.PATH, diff.getPath().toString());
+                    if (!jsonNode.has(Constants.VALUE)) {
+                        jsonNode.set(Constants.VALUE, diff.getValue());
+                    }
+                    break;
+
+                default:
+                    // Safety net
+                    throw new IllegalArgumentException("Unknown operation specified:" + diff.getOperation());
+            }
+        }
+    }
+
+    /**
+     * Writes each operation as an object to a generator, with the same fields in the same order as
+     * {@link ToArrayNode}. The enclosing array is left to the caller. I/O failures are rethrown as
+     * {@link UncheckedIOException}.
+     */
+    static final class ToGenerator extends DiffWriter {
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        private final JsonGenerator generator;
+
+        ToGenerator(EnumSet<DiffFlags> flags, JsonGenerator generator) {
+            super(flags);
+            this.generator = generator;
+        }
+
+        @Override
+        void writeDiff(Diff diff) {
+            try {
+                generator.writeStartObject();
+                generator.writeStringField(Constants.OP, diff.getOperation().rfcName());
+                switch (diff.getOperation()) {
+                    case MOVE:
+                    case COPY:
+                        generator.writeStringField(Constants.FROM, diff.getPath().toString());
+                        generator.writeStringField(Constants.PATH, diff.getToPath().toString());
+                        break;
+
+                    case REMOVE:
+                        generator.writeStringField(Constants.PATH, diff.getPath().toString());
+                        if (!flags.contains(DiffFlags.OMIT_VALUE_ON_REMOVE))
+                            writeField(Constants.VALUE, diff.getValue());
+                        break;
+
+                    case REPLACE:
+                        if (flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE)) {
+                            writeField(Constants.FROM_VALUE, diff.getSrcValue());
+                        } else if (flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE_AS_VALUE)) {
+                            writeField(Constants.VALUE, diff.getSrcValue());
+                            generator.writeStringField(Constants.PATH, diff.getPath().toString());
+                            break;
+                        }
+                    case ADD:
+                    case TEST:
+                        generator.writeStringField(Constants.PATH, diff.getPath().toString());
+                        writeField(Constants.VALUE, diff.getValue());
+                        break;
+
+                    default:
+                        // Safety net
+                        throw new IllegalArgumentException("Unknown operation specified:" + diff.getOperation());
+                }
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeField(String name, JsonNode value) throws IOException {
+            generator.writeFieldName(name);
+            if (value == null)
+                generator.writeNull();
+            else
+                MAPPER.writeTree(generator, value);
+        }
+    }
+
+    /** Forwards every operation to a {@link DiffSink}. */
+    static final class ToSink extends DiffWriter {
+        private final DiffSink sink;
+
+        ToSink(EnumSet<DiffFlags> flags, DiffSink sink) {
+            super(flags);
+            this.sink = sink;
+        }
+
+        @Override
+        void writeDiff(Diff diff) {
+            switch (diff.getOperation()) {
+                case ADD:
+                    sink.add(diff.getPath().toString(), diff.getValue());
+                    break;
+                case REMOVE:
+                    sink.remove(diff.getPath().toString(), removedValue(diff));
+                    break;
+                case REPLACE:
+                    sink.replace(diff.getPath().toString(), replacedValue(diff), fromValue(diff));
+                    break;
+                case MOVE:
+                    sink.move(diff.getPath().toString(), diff.getToPath().toString());
+                    break;
+                case COPY:
+                    sink.copy(diff.getPath().toString(), diff.getToPath().toString());
+                    break;
+                case TEST:
+                    sink.test(diff.getPath().toString(), diff.getValue());
+                    break;
+                default:
+                    // Safety net
+                    throw new IllegalArgumentException("Unknown operation specified:" + diff.getOperation());
+            }
+        }
+    }
+}
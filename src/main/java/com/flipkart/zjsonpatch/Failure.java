@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The reasons an operation can fail to apply. Failures carry the code and its arguments, and the
+ * message is only rendered when someone asks for it, so that patches expected to fail (see
+ * {@link CompiledPatch#tryApply(JsonNode)}) don't pay for formatting messages nobody reads.
+ */
+enum Failure {
+    TEST_MISMATCH("", "") {
+        @Override
+        String message(Object expected, Object found) {
+            return "Expected " + show((JsonNode) expected) + " but found " + show((JsonNode) found);
+        }
+    },
+    MISSING_FIELD("Missing field \"", "\""),
+    FIELD_ON_ARRAY("Can't reference field \"", "\" on array"),
+    INDEX_OUT_OF_BOUNDS("Array index ", " out of bounds"),
+    UNRESOLVED_INDEX("Array index ", " is out of bounds"),
+    PAST_SCALAR("Can't reference past scalar value", null),
+    SCALAR_PARENT("Cannot reference past scalar value", null),
+    ROOT_REMOVAL("Cannot remove document root", null);
+
+    private final String prefix;
+    // null for messages without an argument
+    private final String suffix;
+
+    Failure(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Renders the message for the given arguments: the token, field or index the operation failed on,
+     * and for {@link #TEST_MISMATCH} the expected and the found value.
+     */
+    String message(Object detail, Object found) {
+        return suffix == null ? prefix : prefix + detail + suffix;
+    }
+
+    private static String show(JsonNode value) {
+        if (value == null || value.isNull())
+            return "null";
+        else if (value.isArray())
+            return "array";
+        else if (value.isObject())
+            return "object";
+        else
+            return "value " + value.toString();     // Caveat: numeric may differ from source (e.g. trailing zeros)
+    }
+}
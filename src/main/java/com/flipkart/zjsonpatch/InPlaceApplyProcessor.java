@@ -24,8 +24,10 @@ import java.util.EnumSet;
 
 class InPlaceApplyProcessor implements JsonPatchProcessor {
 
-    private JsonNode target;
+    JsonNode target;
     private EnumSet<CompatibilityFlags> flags;
+    // Consecutive operations often share a path prefix, which is then resolved only once
+    final PointerCursor cursor = new PointerCursor();
 
     InPlaceApplyProcessor(JsonNode target) {
         this(target, CompatibilityFlags.defaults());
@@ -42,35 +44,23 @@ class InPlaceApplyProcessor implements JsonPatchProcessor {
 
     @Override
     public void move(JsonPointer fromPath, JsonPointer toPath) throws JsonPointerEvaluationException {
-        JsonNode valueNode = fromPath.evaluate(target);
+        JsonNode valueNode = resolve(fromPath);
         remove(fromPath);
         set(toPath, valueNode, Operation.MOVE);
     }
 
     @Override
     public void copy(JsonPointer fromPath, JsonPointer toPath) throws JsonPointerEvaluationException {
-        JsonNode valueNode = fromPath.evaluate(target);
+        JsonNode valueNode = resolve(fromPath);
         JsonNode valueToCopy = valueNode != null ? valueNode.deepCopy() : null;
         set(toPath, valueToCopy, Operation.COPY);
     }
 
-    private static String show(JsonNode value) {
-        if (value == null || value.isNull())
-            return "null";
-        else if (value.isArray())
-            return "array";
-        else if (value.isObject())
-            return "object";
-        else
-            return "value " + value.toString();     // Caveat: numeric may differ from source (e.g. trailing zeros)
-    }
-
     @Override
     public void test(JsonPointer path, JsonNode value) throws JsonPointerEvaluationException {
-        JsonNode valueNode = path.evaluate(target);
+        JsonNode valueNode = resolve(path);
         if (!valueNode.equals(value))
-            throw new JsonPatchApplicationException(
-                    "Expected " + show(value) + " but found " + show(valueNode), Operation.TEST, path);
+            throw new JsonPatchApplicationException(Failure.TEST_MISMATCH, value, valueNode, Operation.TEST, path);
     }
 
     @Override
@@ -81,59 +71,85 @@ class InPlaceApplyProcessor implements JsonPatchProcessor {
     @Override
     public void replace(JsonPointer path, JsonNode value) throws JsonPointerEvaluationException {
         if (path.isRoot()) {
-            target = value;
+            setRoot(value);
             return;
         }
 
-        JsonNode parentNode = path.getParent().evaluate(target);
+        JsonNode parentNode = parentOf(path);
         JsonPointer.RefToken token = path.last();
         if (parentNode.isObject()) {
             if (!flags.contains(CompatibilityFlags.ALLOW_MISSING_TARGET_OBJECT_ON_REPLACE) &&
                     !parentNode.has(token.getField()))
                 throw new JsonPatchApplicationException(
-                        "Missing field \"" + token.getField() + "\"", Operation.REPLACE, path.getParent());
-            ((ObjectNode) parentNode).replace(token.getField(), value);
+                        Failure.MISSING_FIELD, token.getField(), null, Operation.REPLACE, path.getParent());
+            putField((ObjectNode) parentNode, token.getField(), value);
         } else if (parentNode.isArray()) {
-            if (token.getIndex() >= parentNode.size())
+            int index = indexOf(path, Operation.REPLACE);
+            if (index == JsonPointer.LAST_INDEX || index >= parentNode.size())
                 throw new JsonPatchApplicationException(
-                        "Array index " + token.getIndex() + " out of bounds", Operation.REPLACE, path.getParent());
-            ((ArrayNode) parentNode).set(token.getIndex(), value);
+                        Failure.INDEX_OUT_OF_BOUNDS, token, null, Operation.REPLACE, path.getParent());
+            setElement((ArrayNode) parentNode, index, value);
         } else {
             throw new JsonPatchApplicationException(
-                    "Can't reference past scalar value", Operation.REPLACE, path.getParent());
+                    Failure.PAST_SCALAR, null, null, Operation.REPLACE, path.getParent());
         }
     }
 
     @Override
     public void remove(JsonPointer path) throws JsonPointerEvaluationException {
         if (path.isRoot())
-            throw new JsonPatchApplicationException("Cannot remove document root", Operation.REMOVE, path);
+            throw new JsonPatchApplicationException(Failure.ROOT_REMOVAL, null, null, Operation.REMOVE, path);
 
-        JsonNode parentNode = path.getParent().evaluate(target);
+        JsonNode parentNode = parentOf(path);
         JsonPointer.RefToken token = path.last();
         if (parentNode.isObject())
-            ((ObjectNode) parentNode).remove(token.getField());
+            removeField((ObjectNode) parentNode, token.getField());
         else if (parentNode.isArray()) {
+            int index = indexOf(path, Operation.REMOVE);
             if (!flags.contains(CompatibilityFlags.REMOVE_NONE_EXISTING_ARRAY_ELEMENT) &&
-                    token.getIndex() >= parentNode.size())
+                    index >= parentNode.size())
                 throw new JsonPatchApplicationException(
-                        "Array index " + token.getIndex() + " out of bounds", Operation.REPLACE, path.getParent());
-            ((ArrayNode) parentNode).remove(token.getIndex());
+                        Failure.INDEX_OUT_OF_BOUNDS, index, null, Operation.REPLACE, path.getParent());
+            removeElement((ArrayNode) parentNode, index);
         } else {
             throw new JsonPatchApplicationException(
-                    "Cannot reference past scalar value", Operation.REPLACE, path.getParent());
+                    Failure.SCALAR_PARENT, null, null, Operation.REPLACE, path.getParent());
         }
     }
 
 
+    /**
+     * Returns the array index the last token of {@code path} stands for, failing if it is a field name.
+     */
+    private static int indexOf(JsonPointer path, Operation forOp) {
+        JsonPointer.RefToken token = path.last();
+        if (!token.isArrayIndex())
+            throw new JsonPatchApplicationException(
+                    Failure.FIELD_ON_ARRAY, token.getField(), null, forOp, path.getParent());
+        return token.getIndex();
+    }
+
+    /**
+     * Resolves the node at {@code path} for reading.
+     */
+    JsonNode resolve(JsonPointer path) throws JsonPointerEvaluationException {
+        return cursor.resolve(target, path, path.size());
+    }
+
+    /**
+     * Resolves the parent of the node at {@code path}, which the caller is about to modify.
+     */
+    JsonNode parentOf(JsonPointer path) throws JsonPointerEvaluationException {
+        return cursor.resolve(target, path, path.size() - 1);
+    }
 
-    private void set(JsonPointer path, JsonNode value, Operation forOp) throws JsonPointerEvaluationException {
+    void set(JsonPointer path, JsonNode value, Operation forOp) throws JsonPointerEvaluationException {
         if (path.isRoot())
-            target = value;
+            setRoot(value);
         else {
-            JsonNode parentNode = path.getParent().evaluate(target);
+            JsonNode parentNode = parentOf(path);
             if (!parentNode.isContainerNode())
-                throw new JsonPatchApplicationException("Cannot reference past scalar value", forOp, path.getParent());
+                throw new JsonPatchApplicationException(Failure.SCALAR_PARENT, null, null, forOp, path.getParent());
             else if (parentNode.isArray())
                 addToArray(path, value, parentNode);
             else
@@ -144,21 +160,140 @@ class InPlaceApplyProcessor implements JsonPatchProcessor {
     private void addToObject(JsonPointer path, JsonNode node, JsonNode value) {
         final ObjectNode target = (ObjectNode) node;
         String key = path.last().getField();
-        target.set(key, value);
+        putField(target, key, value);
     }
 
     private void addToArray(JsonPointer path, JsonNode value, JsonNode parentNode) {
         final ArrayNode target = (ArrayNode) parentNode;
-        int idx = path.last().getIndex();
+        int idx = indexOf(path, Operation.ADD);
 
         if (idx == JsonPointer.LAST_INDEX) {
             // see http://tools.ietf.org/html/rfc6902#section-4.1
-            target.add(value);
+            insertElement(target, target.size(), value);
         } else {
             if (idx > target.size())
                 throw new JsonPatchApplicationException(
-                        "Array index " + idx + " out of bounds", Operation.ADD, path.getParent());
-            target.insert(idx, value);
+                        Failure.INDEX_OUT_OF_BOUNDS, idx, null, Operation.ADD, path.getParent());
+            insertElement(target, idx, value);
+        }
+    }
+
+    /**
+     * Applies a run of {@link Operation#ADD} and {@link Operation#REMOVE} operations on elements of one
+     * array with a single rebuild of the array, with the same outcome as applying them one by one. The
+     * operations address the parent of {@code path}; {@code indexes[i]} is the index of the i-th one and
+     * {@code values[i]} the element it inserts, {@code null} for a removal. With {@code copyValues}, the
+     * elements of the applied edits are inserted as deep copies, which replace them in {@code values}.
+     *
+     * <p>The edits are replayed on a gap buffer holding the elements, so that each one only moves the
+     * elements between its index and that of the previous edit. For the ascending indexes of a diff,
+     * the whole run costs a single pass over the array.
+     *
+     * @return the number of leading operations applied: none if the parent isn't an array, and fewer
+     *         than given if the next one would fail. The caller applies the others one by one.
+     */
+    int editArray(JsonPointer path, int[] indexes, JsonNode[] values, boolean copyValues) {
+        JsonNode parentNode;
+        try {
+            parentNode = parentOf(path);
+        } catch (JsonPointerEvaluationException e) {
+            return 0;
+        }
+        if (!parentNode.isArray())
+            return 0;
+        ArrayNode array = (ArrayNode) parentNode;
+
+        // Find the edits that succeed, and the size of the buffer they need
+        int size = array.size();
+        int capacity = size;
+        int count = 0;
+        while (count < indexes.length) {
+            int index = indexes[count];
+            if (values[count] != null) {
+                if (index != JsonPointer.LAST_INDEX && index > size)
+                    break;
+                size++;
+                capacity++;
+            } else {
+                if (index >= size)
+                    break;
+                size--;
+            }
+            count++;
+        }
+        if (count == 0)
+            return 0;
+        if (copyValues) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] != null)
+                    values[i] = values[i].deepCopy();
+            }
+        }
+
+        // Elements before the gap are [0, gapStart), those after it [gapEnd, capacity)
+        JsonNode[] buffer = new JsonNode[capacity];
+        int gapStart = 0;
+        int gapEnd = capacity - array.size();
+        for (int i = 0; i < array.size(); i++) {
+            buffer[gapEnd + i] = array.get(i);
         }
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i] == JsonPointer.LAST_INDEX ? gapStart + capacity - gapEnd : indexes[i];
+            if (index < gapStart) {
+                int moved = gapStart - index;
+                System.arraycopy(buffer, index, buffer, gapEnd - moved, moved);
+                gapStart -= moved;
+                gapEnd -= moved;
+            } else if (index > gapStart) {
+                int moved = index - gapStart;
+                System.arraycopy(buffer, gapEnd, buffer, gapStart, moved);
+                gapStart += moved;
+                gapEnd += moved;
+            }
+            if (values[i] != null)
+                buffer[gapStart++] = values[i];
+            else
+                gapEnd++;
+        }
+        System.arraycopy(buffer, gapEnd, buffer, gapStart, capacity - gapEnd);
+        setElements(array, buffer, gapStart + capacity - gapEnd);
+        return count;
+    }
+
+    // All modifications of the document go through the methods below
+
+    void setRoot(JsonNode value) {
+        target = value;
+    }
+
+    /** Sets a field, returning its previous value if there was one */
+    JsonNode putField(ObjectNode object, String field, JsonNode value) {
+        return object.replace(field, value);
+    }
+
+    /** Removes a field, returning its previous value if there was one */
+    JsonNode removeField(ObjectNode object, String field) {
+        return object.remove(field);
+    }
+
+    JsonNode setElement(ArrayNode array, int index, JsonNode value) {
+        return array.set(index, value);
+    }
+
+    void insertElement(ArrayNode array, int index, JsonNode value) {
+        array.insert(index, value);
+    }
+
+    /** Replaces all elements of an array by the first {@code count} of {@code elements} */
+    void setElements(ArrayNode array, JsonNode[] elements, int count) {
+        array.removeAll();
+        for (int i = 0; i < count; i++) {
+            array.add(elements[i]);
+        }
+    }
+
+    /** Removes an element, returning {@code null} if the index is out of bounds */
+    JsonNode removeElement(ArrayNode array, int index) {
+        return array.remove(index);
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A patch together with its inverse, the patch that reverts it.
+ *
+ * @see JsonDiffer#diffWithInverse(JsonNode, JsonNode)
+ */
+public final class InvertiblePatch {
+
+    private final JsonNode patch;
+    private final JsonNode inverse;
+
+    InvertiblePatch(JsonNode patch, JsonNode inverse) {
+        this.patch = patch;
+        this.inverse = inverse;
+    }
+
+    /** Returns the patch from the source to the target document. */
+    public JsonNode getPatch() {
+        return patch;
+    }
+
+    /** Returns the patch from the target back to the source document. */
+    public JsonNode getInverse() {
+        return inverse;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Applies a patch copy-on-write while recording, for every modification, the operation that reverts
+ * it. The modifications are observed where they happen, so array appends and fields overwritten by
+ * {@code add} are reverted with the concrete index and the previous value.
+ */
+class InvertingApplyProcessor extends CopyOnWriteApplyProcessor {
+
+    private final List<Diff> inverses = new ArrayList<Diff>();
+    // Path of the operation being applied, which the modification primitives act on
+    private JsonPointer current;
+    // Whether the last value removed was an array element
+    private boolean removedElement;
+
+    InvertingApplyProcessor(JsonNode target, EnumSet<CompatibilityFlags> flags) {
+        super(target, flags);
+    }
+
+    /**
+     * Returns the patch that reverts the operations applied so far.
+     */
+    JsonNode inverse() {
+        DiffWriter.ToArrayNode out = new DiffWriter.ToArrayNode(DiffFlags.defaults());
+        for (int i = inverses.size() - 1; i >= 0; i--) {
+            out.write(inverses.get(i));
+        }
+        return out.getPatch();
+    }
+
+    /**
+     * Records the operation restoring {@code value}. The parts of the value this application made writable
+     * are copied right away, since later operations may modify them in place.
+     */
+    private void restore(Operation operation, JsonPointer path, JsonNode value) {
+        inverses.add(new Diff(operation, path, snapshot(value)));
+    }
+
+    @Override
+    int editArray(JsonPointer path, int[] indexes, JsonNode[] values, boolean copyValues) {
+        // Every edit needs its own inverse
+        return 0;
+    }
+
+    @Override
+    public void move(JsonPointer fromPath, JsonPointer toPath) throws JsonPointerEvaluationException {
+        int mark = inverses.size();
+        super.move(fromPath, toPath);
+        // A move up into an ancestor of its source can't be moved back
+        if (inverses.size() != mark + 2 || fromPath.startsWith(toPath))
+            return;
+        Diff removal = inverses.get(mark);
+        Diff insertion = inverses.get(mark + 1);
+        // The overwritten field is restored after the move back, which shifts the indexes of the array the
+        // value came from; keep the separate inverses if that array encloses the field
+        if (insertion.getOperation() == Operation.REPLACE && removedElement
+                && insertion.getPath().startsWith(removal.getPath().getParent()))
+            return;
+        // Revert the removal and the insertion with a single move back, restoring an overwritten field after it
+        inverses.subList(mark, inverses.size()).clear();
+        if (insertion.getOperation() == Operation.REPLACE)
+            inverses.add(new Diff(Operation.ADD, insertion.getPath(), insertion.getValue()));
+        inverses.add(new Diff(Operation.MOVE, insertion.getPath(), removal.getPath()));
+    }
+
+    @Override
+    public void replace(JsonPointer path, JsonNode value) throws JsonPointerEvaluationException {
+        current = path;
+        super.replace(path, value);
+    }
+
+    @Override
+    public void remove(JsonPointer path) throws JsonPointerEvaluationException {
+        current = path;
+        super.remove(path);
+    }
+
+    @Override
+    void set(JsonPointer path, JsonNode value, Operation forOp) throws JsonPointerEvaluationException {
+        current = path;
+        super.set(path, value, forOp);
+    }
+
+    @Override
+    void setRoot(JsonNode value) {
+        restore(Operation.REPLACE, JsonPointer.ROOT, target);
+        super.setRoot(value);
+    }
+
+    @Override
+    JsonNode putField(ObjectNode object, String field, JsonNode value) {
+        JsonNode previous = super.putField(object, field, value);
+        if (previous == null)
+            inverses.add(new Diff(Operation.REMOVE, current, (JsonNode) null));
+        else
+            restore(Operation.REPLACE, current, previous);
+        return previous;
+    }
+
+    @Override
+    JsonNode removeField(ObjectNode object, String field) {
+        JsonNode previous = super.removeField(object, field);
+        removedElement = false;
+        if (previous != null)
+            restore(Operation.ADD, current, previous);
+        return previous;
+    }
+
+    @Override
+    JsonNode setElement(ArrayNode array, int index, JsonNode value) {
+        JsonNode previous = super.setElement(array, index, value);
+        restore(Operation.REPLACE, current, previous);
+        return previous;
+    }
+
+    @Override
+    void insertElement(ArrayNode array, int index, JsonNode value) {
+        super.insertElement(array, index, value);
+        inverses.add(new Diff(Operation.REMOVE, current.getParent().append(index), (JsonNode) null));
+    }
+
+    @Override
+    JsonNode removeElement(ArrayNode array, int index) {
+        JsonNode previous = super.removeElement(array, index);
+        removedElement = true;
+        if (previous != null)
+            restore(Operation.ADD, current, previous);
+        return previous;
+    }
+}
@@ -16,15 +16,15 @@
 
 package com.flipkart.zjsonpatch;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.apache.commons.collections4.ListUtils;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * User: gopi.vishwakarma
@@ -32,331 +32,383 @@ import java.util.*;
  */
 public final class JsonDiff {
 
-    private final List<Diff> diffs = new ArrayList<>();
+    private final ArrayList<Diff> diffs = new ArrayList<>();
     private final EnumSet<DiffFlags> flags;
-    private final ObjectMapper mapper = new ObjectMapper();
-    private final HashMap<String, Integer> sourceIndexById = new HashMap<>();
-    private final HashMap<String, Integer> targetIndexById = new HashMap<>();
-    private final String[] idsHandledByArrays = new String[]{"id", "_id", "uuid"};
+    private final NodeDigests digests;
+    private final MyersLcs myersLcs;
+    private final int minCopySize;
+    private final ForkJoinPool pool;
+    private final int forkThreshold;
+    private DiffWriter out;
+    private ForkScope scope;
+    private boolean busy;
 
-    private JsonDiff(EnumSet<DiffFlags> flags) {
+    /**
+     * By default any unchanged value, scalars included, may be the source of a {@link Operation#COPY}.
+     */
+    static final int DEFAULT_MIN_COPY_SIZE = 1;
+
+    /** Diff lists that grew past this many entries are shrunk when a pooled engine is reset */
+    private static final int MAX_RETAINED_DIFFS = 1 << 16;
+
+    /**
+     * Containers are compared in parallel once source and target together span twice this many
+     * nodes, in subtasks of about this many nodes each.
+     */
+    static final int DEFAULT_FORK_THRESHOLD = 1 << 12;
+
+    JsonDiff(EnumSet<DiffFlags> flags, int minCopySize) {
+        this(flags, minCopySize, null, DEFAULT_FORK_THRESHOLD);
+    }
+
+    /**
+     * Creates a diff engine. An engine keeps scratch state between runs and must only be used by
+     * one thread at a time; {@link JsonDiffer} pools engines per thread.
+     *
+     * @param pool the pool large containers are compared in, or {@code null} to compare sequentially
+     */
+    JsonDiff(EnumSet<DiffFlags> flags, int minCopySize, ForkJoinPool pool, int forkThreshold) {
         this.flags = flags.clone();
+        this.minCopySize = minCopySize;
+        this.pool = pool;
+        this.forkThreshold = forkThreshold;
+        this.digests = new NodeDigests();
+        this.myersLcs = new MyersLcs(digests);
+    }
+
+    /**
+     * Creates an engine for one subtask of {@code parent}, which reuses the digests known to the parent.
+     */
+    private JsonDiff(JsonDiff parent) {
+        this.flags = parent.flags;
+        this.minCopySize = parent.minCopySize;
+        this.pool = parent.pool;
+        this.forkThreshold = parent.forkThreshold;
+        this.digests = new NodeDigests(parent.digests);
+        this.myersLcs = new MyersLcs(digests);
     }
 
     public static JsonNode asJson(final JsonNode source, final JsonNode target) {
-        return asJson(source, target, DiffFlags.defaults());
+        return JsonDiffer.defaults().diff(source, target);
     }
 
     public static JsonNode asJson(final JsonNode source, final JsonNode target, EnumSet<DiffFlags> flags) {
-        JsonDiff diff = new JsonDiff(flags);
-        if (source == null && target != null) {
-            // return add node at root pointing to the target
-            diff.diffs.add(Diff.generateDiff(Operation.ADD, JsonPointer.ROOT, target));
-        }
-        if (source != null && target == null) {
-            // return remove node at root pointing to the source
-            diff.diffs.add(Diff.generateDiff(Operation.REMOVE, JsonPointer.ROOT, source));
-        }
-        if (source != null && target != null) {
-            diff.generateDiffs(JsonPointer.ROOT, source, target);
-
-            if (!flags.contains(DiffFlags.OMIT_MOVE_OPERATION))
-                // Merging remove & add to move operation
-                diff.introduceMoveOperation();
-
-            if (!flags.contains(DiffFlags.OMIT_COPY_OPERATION))
-                // Introduce copy operation
-                diff.introduceCopyOperation(source, target);
+        return JsonDiffer.of(flags).diff(source, target);
+    }
 
-            if (flags.contains(DiffFlags.ADD_EXPLICIT_REMOVE_ADD_ON_REPLACE))
-                // Split replace into remove and add instructions
-                diff.introduceExplicitRemoveAndAddOperation();
-        }
-        return diff.getJsonNodes();
+    /**
+     * Computes a patch from {@code source} to {@code target}, restricting {@link Operation#COPY} operations
+     * to values spanning at least {@code minCopySize} JSON nodes.
+     *
+     * @see JsonDiffer#withMinCopySize(int)
+     */
+    public static JsonNode asJson(final JsonNode source, final JsonNode target, EnumSet<DiffFlags> flags, int minCopySize) {
+        if (minCopySize == DEFAULT_MIN_COPY_SIZE)
+            return JsonDiffer.of(flags).diff(source, target);
+        // Only the default size has pooled engines; the engine for any other one is dropped after the call
+        return new JsonDiff(flags, JsonDiffer.checkMinCopySize(minCopySize)).diff(source, target);
     }
 
-    private static JsonPointer getMatchingValuePath(Map<JsonNode, JsonPointer> unchangedValues, JsonNode value) {
-        return unchangedValues.get(value);
+    boolean isBusy() {
+        return busy;
     }
 
-    private void introduceCopyOperation(JsonNode source, JsonNode target) {
-        Map<JsonNode, JsonPointer> unchangedValues = getUnchangedPart(source, target);
+    JsonNode diff(final JsonNode source, final JsonNode target) {
+        DiffWriter.ToArrayNode out = new DiffWriter.ToArrayNode(flags);
+        diff(source, target, out);
+        return out.getPatch();
+    }
 
-        for (int i = 0; i < diffs.size(); i++) {
-            Diff diff = diffs.get(i);
-            if (Operation.ADD != diff.getOperation()) continue;
+    /**
+     * Computes the diffs and hands them to {@code out} in patch order. When neither moves nor copies
+     * are introduced, no post-pass needs the whole patch and every diff is written as soon as it is found.
+     */
+    void diff(final JsonNode source, final JsonNode target, DiffWriter out) {
+        diff(source, target, out, null);
+    }
 
-            JsonPointer matchingValuePath = getMatchingValuePath(unchangedValues, diff.getValue());
-            if (matchingValuePath != null && isAllowed(matchingValuePath, diff.getPath())) {
-                // Matching value found; replace add with copy
-                if (flags.contains(DiffFlags.EMIT_TEST_OPERATIONS)) {
-                    // Prepend test node
-                    diffs.add(i, new Diff(Operation.TEST, matchingValuePath, diff.getValue()));
-                    i++;
-                }
-                diffs.set(i, new Diff(Operation.COPY, matchingValuePath, diff.getPath()));
+    /**
+     * Computes the diffs as {@link #diff(JsonNode, JsonNode, DiffWriter)} does and, if {@code inverse} is
+     * given, hands it the diffs that turn {@code target} back into {@code source}: the inverse of each
+     * diff, in reverse order.
+     */
+    void diff(final JsonNode source, final JsonNode target, DiffWriter out, DiffWriter inverse) {
+        begin(out, inverse == null && flags.contains(DiffFlags.OMIT_COPY_OPERATION));
+        try {
+            if (source == null && target != null) {
+                // return add node at root pointing to the target
+                emit(Diff.generateDiff(Operation.ADD, JsonPointer.ROOT, target));
             }
-        }
-    }
+            if (source != null && target == null) {
+                // return remove node at root pointing to the source
+                emit(Diff.generateDiff(Operation.REMOVE, JsonPointer.ROOT, source));
+            }
+            if (source != null && target != null) {
+                generateDiffs(JsonPointer.ROOT, source, target);
 
-    private static boolean isNumber(String str) {
-        int size = str.length();
+                if (!flags.contains(DiffFlags.OMIT_MOVE_OPERATION))
+                    // Merging remove & add to move operation
+                    introduceMoveOperation();
 
-        for (int i = 0; i < size; i++) {
-            if (!Character.isDigit(str.charAt(i))) {
-                return false;
+                if (!flags.contains(DiffFlags.OMIT_COPY_OPERATION))
+                    // Introduce copy operation
+                    introduceCopyOperation(source, target);
             }
+            finish(out);
+            if (inverse != null)
+                finishInverse(inverse);
+        } finally {
+            reset();
         }
+    }
 
-        return size > 0;
+    /**
+     * Computes the diffs between two documents read from parsers, materializing only the parts that
+     * differ; see {@link TokenDiff}. {@link Operation#COPY} operations would need an index of every
+     * unchanged value in the complete documents and are never introduced.
+     */
+    void diff(JsonParser source, JsonParser target, DiffWriter out) throws IOException {
+        diff(new TokenDiff(this, flags), source, target, out);
     }
 
-    // TODO this is quite unclear and needs some serious documentation
-    private static boolean isAllowed(JsonPointer source, JsonPointer destination) {
-        boolean isSame = source.equals(destination);
-        int i = 0;
-        int j = 0;
-        // Hack to fix broken COPY operation, need better handling here
-        while (i < source.size() && j < destination.size()) {
-            JsonPointer.RefToken srcValue = source.get(i);
-            JsonPointer.RefToken dstValue = destination.get(j);
-            String srcStr = srcValue.toString();
-            String dstStr = dstValue.toString();
-            if (isNumber(srcStr) && isNumber(dstStr)) {
+    /**
+     * Computes the diffs between two documents read from parsers with the given walker, which must have
+     * been created for this engine.
+     */
+    void diff(TokenDiff tokens, JsonParser source, JsonParser target, DiffWriter out) throws IOException {
+        begin(out, true);
+        try {
+            tokens.diff(source, target);
 
-                if (srcStr.compareTo(dstStr) > 0) {
-                    return false;
-                }
-            }
-            i++;
-            j++;
+            if (!flags.contains(DiffFlags.OMIT_MOVE_OPERATION))
+                // Merging remove & add to move operation
+                introduceMoveOperation();
 
+            finish(out);
+        } finally {
+            reset();
         }
-        return !isSame;
     }
 
-    private static Map<JsonNode, JsonPointer> getUnchangedPart(JsonNode source, JsonNode target) {
-        Map<JsonNode, JsonPointer> unchangedValues = new HashMap<JsonNode, JsonPointer>();
-        computeUnchangedValues(unchangedValues, JsonPointer.ROOT, source, target);
-        return unchangedValues;
+    private void begin(DiffWriter out, boolean omitCopies) {
+        busy = true;
+        boolean streaming = flags.contains(DiffFlags.OMIT_MOVE_OPERATION) && omitCopies;
+        this.out = streaming ? out : null;
+        // A sequential streaming diff caches no digests, so it holds nothing beyond the recursion and the
+        // LCS scratch of the arrays being compared; parallel diffs need cached subtree sizes to split the work
+        digests.setCaching(!streaming || pool != null);
     }
 
-    private static void computeUnchangedValues(Map<JsonNode, JsonPointer> unchangedValues, JsonPointer path, JsonNode source, JsonNode target) {
-        if (source.equals(target)) {
-            if (!unchangedValues.containsKey(target)) {
-                unchangedValues.put(target, path);
-            }
-            return;
-        }
-
-        final NodeType firstType = NodeType.getNodeType(source);
-        final NodeType secondType = NodeType.getNodeType(target);
-
-        if (firstType == secondType) {
-            switch (firstType) {
-                case OBJECT:
-                    computeObject(unchangedValues, path, source, target);
-                    break;
-                case ARRAY:
-                    computeArray(unchangedValues, path, source, target);
-                    break;
-                default:
-                    /* nothing */
-            }
+    private void finish(DiffWriter out) {
+        for (Diff diff : diffs) {
+            out.write(diff);
         }
     }
 
-    private static void computeArray(Map<JsonNode, JsonPointer> unchangedValues, JsonPointer path, JsonNode source, JsonNode target) {
-        final int size = Math.min(source.size(), target.size());
-
-        for (int i = 0; i < size; i++) {
-            JsonPointer currPath = path.append(i);
-            computeUnchangedValues(unchangedValues, currPath, source.get(i), target.get(i));
+    private void finishInverse(DiffWriter inverse) {
+        for (int i = diffs.size() - 1; i >= 0; i--) {
+            Diff diff = diffs.get(i).inverse();
+            if (diff != null)
+                inverse.write(diff);
         }
     }
 
-    private static void computeObject(Map<JsonNode, JsonPointer> unchangedValues, JsonPointer path, JsonNode source, JsonNode target) {
-        final Iterator<String> firstFields = source.fieldNames();
-        while (firstFields.hasNext()) {
-            String name = firstFields.next();
-            if (target.has(name)) {
-                JsonPointer currPath = path.append(name);
-                computeUnchangedValues(unchangedValues, currPath, source.get(name), target.get(name));
-            }
-        }
+    private void reset() {
+        // Drop every reference to the documents so that pooled engines don't retain them
+        this.out = null;
+        boolean large = diffs.size() > MAX_RETAINED_DIFFS;
+        diffs.clear();
+        if (large)
+            diffs.trimToSize();
+        digests.clear();
+        digests.setCaching(true);
+        myersLcs.trim();
+        busy = false;
     }
 
     /**
-     * This method merge 2 diffs ( remove then add, or vice versa ) with same value into one Move operation,
-     * all the core logic resides here only
+     * Drops the cached digests of the nodes compared so far, for callers that compare a document region
+     * by region and won't look at the previous regions again.
      */
-    private void introduceMoveOperation() {
-        for (int i = 0; i < diffs.size(); i++) {
-            Diff diff1 = diffs.get(i);
-
-            // if not remove OR add, move to next diff
-            if (!(Operation.REMOVE == diff1.getOperation() ||
-                    Operation.ADD == diff1.getOperation())) {
-                continue;
-            }
-
-            for (int j = i + 1; j < diffs.size(); j++) {
-                Diff diff2 = diffs.get(j);
-                if (!diff1.getValue().equals(diff2.getValue())) {
-                    continue;
-                }
-
-                Diff moveDiff = null;
-                if (Operation.REMOVE == diff1.getOperation() &&
-                        Operation.ADD == diff2.getOperation()) {
-                    JsonPointer relativePath = computeRelativePath(diff2.getPath(), i + 1, j - 1, diffs);
-                    moveDiff = new Diff(Operation.MOVE, diff1.getPath(), relativePath);
+    void releaseDigests() {
+        digests.clear();
+    }
 
-                } else if (Operation.ADD == diff1.getOperation() &&
-                        Operation.REMOVE == diff2.getOperation()) {
-                    JsonPointer relativePath = computeRelativePath(diff2.getPath(), i, j - 1, diffs); // diff1's add should also be considered
-                    moveDiff = new Diff(Operation.MOVE, relativePath, diff1.getPath());
-                }
-                if (moveDiff != null) {
-                    diffs.remove(j);
-                    diffs.set(i, moveDiff);
-                    break;
-                }
-            }
-        }
+    void emit(Diff diff) {
+        if (scope != null)
+            scope.add(diff);
+        else if (out != null)
+            out.write(diff);
+        else
+            diffs.add(diff);
     }
 
-    /**
-     * This method splits a {@link Operation#REPLACE} operation within a diff into a {@link Operation#REMOVE}
-     * and {@link Operation#ADD} in order, respectively.
-     * Does nothing if {@link Operation#REPLACE} op does not contain a from value
-     */
-    private void introduceExplicitRemoveAndAddOperation() {
-        List<Diff> updatedDiffs = new ArrayList<Diff>();
+    private void introduceCopyOperation(JsonNode source, JsonNode target) {
+        if (!containsAdd()) return;
+
+        CopyIndex unchangedValues = CopyIndex.build(digests, minCopySize, source, target);
+        List<Diff> updatedDiffs = new ArrayList<Diff>(diffs.size());
         for (Diff diff : diffs) {
-            if (!diff.getOperation().equals(Operation.REPLACE) || diff.getSrcValue() == null) {
+            if (Operation.ADD != diff.getOperation()) {
                 updatedDiffs.add(diff);
                 continue;
             }
-            //Split into two #REMOVE and #ADD
-            updatedDiffs.add(new Diff(Operation.REMOVE, diff.getPath(), diff.getSrcValue()));
-            updatedDiffs.add(new Diff(Operation.ADD, diff.getPath(), diff.getValue()));
+
+            JsonPointer matchingValuePath = unchangedValues.find(diff.getValue());
+            if (matchingValuePath != null && isAllowed(matchingValuePath, diff.getPath())) {
+                // Matching value found; replace add with copy
+                if (flags.contains(DiffFlags.EMIT_TEST_OPERATIONS)) {
+                    // Prepend test node
+                    updatedDiffs.add(new Diff(Operation.TEST, matchingValuePath, diff.getValue()));
+                }
+                updatedDiffs.add(new Diff(Operation.COPY, matchingValuePath, diff.getPath(), diff.getValue()));
+            } else {
+                updatedDiffs.add(diff);
+            }
         }
         diffs.clear();
         diffs.addAll(updatedDiffs);
     }
 
-    //Note : only to be used for arrays
-    //Finds the longest common Ancestor ending at Array
-    private static JsonPointer computeRelativePath(JsonPointer path, int startIdx, int endIdx, List<Diff> diffs) {
-        List<Integer> counters = new ArrayList<Integer>(path.size());
-        for (int i = 0; i < path.size(); i++) {
-            counters.add(0);
+    private boolean containsAdd() {
+        for (Diff diff : diffs) {
+            if (Operation.ADD == diff.getOperation()) return true;
         }
+        return false;
+    }
+
+    private static boolean isIndex(JsonPointer.RefToken token) {
+        return token.isArrayIndex() && token.getIndex() != JsonPointer.LAST_INDEX;
+    }
 
-        for (int i = startIdx; i <= endIdx; i++) {
-            Diff diff = diffs.get(i);
-            //Adjust relative path according to #ADD and #Remove
-            if (Operation.ADD == diff.getOperation() || Operation.REMOVE == diff.getOperation()) {
-                updatePath(path, diff, counters);
+    /**
+     * Checks whether an unchanged value may be copied from {@code source} to {@code destination}.
+     * Unchanged values are indexed by their position in the source document; the copy is rejected
+     * when, at any common depth, the source array index lies past the destination index, as earlier
+     * additions may have shifted the value away by the time the copy is applied.
+     */
+    private static boolean isAllowed(JsonPointer source, JsonPointer destination) {
+        if (source.equals(destination)) return false;
+
+        int size = Math.min(source.size(), destination.size());
+        for (int i = 0; i < size; i++) {
+            JsonPointer.RefToken srcValue = source.get(i);
+            JsonPointer.RefToken dstValue = destination.get(i);
+            if (isIndex(srcValue) && isIndex(dstValue) && srcValue.getIndex() > dstValue.getIndex()) {
+                return false;
             }
         }
-        return updatePathWithCounters(counters, path);
+        return true;
     }
 
-    private static JsonPointer updatePathWithCounters(List<Integer> counters, JsonPointer path) {
-        List<JsonPointer.RefToken> tokens = path.decompose();
-        for (int i = 0; i < counters.size(); i++) {
-            int value = counters.get(i);
-            if (value != 0) {
-                int currValue = tokens.get(i).getIndex();
-                tokens.set(i, new JsonPointer.RefToken(Integer.toString(currValue + value)));
+    /**
+     * This method merge 2 diffs ( remove then add, or vice versa ) with same value into one Move operation,
+     * all the core logic resides here only
+     * <p>
+     * Each {@link Operation#ADD} or {@link Operation#REMOVE} is paired with the first later diff of the opposite
+     * kind carrying an equal value. Diffs are chained per value digest ahead of time, so the partner is always the
+     * head of the opposite chain and no pairwise scan of the diff list is needed.
+     */
+    private void introduceMoveOperation() {
+        int size = diffs.size();
+        Diff[] pending = diffs.toArray(new Diff[size]);
+
+        // Link diffs of equal value into per-kind chains, in diff order
+        Map<NodeDigests.Key, Integer> groupByValue = new HashMap<NodeDigests.Key, Integer>();
+        int[] group = new int[size];
+        int[] next = new int[size];
+        int[] addHead = new int[size];
+        int[] removeHead = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            Diff diff = pending[i];
+            if (!isAddOrRemove(diff)) continue;
+
+            NodeDigests.Key key = digests.key(diff.getValue());
+            Integer g = groupByValue.get(key);
+            if (g == null) {
+                g = groupByValue.size();
+                groupByValue.put(key, g);
+                addHead[g] = -1;
+                removeHead[g] = -1;
+            }
+            group[i] = g;
+            if (Operation.ADD == diff.getOperation()) {
+                next[i] = addHead[g];
+                addHead[g] = i;
+            } else {
+                next[i] = removeHead[g];
+                removeHead[g] = i;
             }
         }
-        return new JsonPointer(tokens);
-    }
 
-    private static void updatePath(JsonPointer path, Diff pseudo, List<Integer> counters) {
-        //find longest common prefix of both the paths
+        ArrayShiftIndex shifts = new ArrayShiftIndex(pending);
+        for (int i = 0; i < size; i++) {
+            Diff diff1 = pending[i];
 
-        if (pseudo.getPath().size() <= path.size()) {
-            int idx = -1;
-            for (int i = 0; i < pseudo.getPath().size() - 1; i++) {
-                if (pseudo.getPath().get(i).equals(path.get(i))) {
-                    idx = i;
-                } else {
-                    break;
-                }
+            // if not remove OR add, move to next diff
+            if (diff1 == null || !isAddOrRemove(diff1)) {
+                continue;
             }
-            if (idx == pseudo.getPath().size() - 2) {
-                if (pseudo.getPath().get(pseudo.getPath().size() - 1).isArrayIndex()) {
-                    updateCounters(pseudo, pseudo.getPath().size() - 1, counters);
-                }
+
+            // Every earlier diff of the chain has already been paired or passed, so diff1 is its head
+            int g = group[i];
+            int j;
+            if (Operation.ADD == diff1.getOperation()) {
+                addHead[g] = next[i];
+                j = removeHead[g];
+                if (j >= 0) removeHead[g] = next[j];
+            } else {
+                removeHead[g] = next[i];
+                j = addHead[g];
+                if (j >= 0) addHead[g] = next[j];
             }
-        }
-    }
+            if (j < 0) continue;
 
-    private static void updateCounters(Diff pseudo, int idx, List<Integer> counters) {
-        if (Operation.ADD == pseudo.getOperation()) {
-            counters.set(idx, counters.get(idx) - 1);
-        } else {
-            if (Operation.REMOVE == pseudo.getOperation()) {
-                counters.set(idx, counters.get(idx) + 1);
+            Diff diff2 = pending[j];
+            Diff moveDiff;
+            if (Operation.REMOVE == diff1.getOperation()) {
+                JsonPointer relativePath = computeRelativePath(diff2.getPath(), i + 1, j - 1, shifts);
+                moveDiff = new Diff(Operation.MOVE, diff1.getPath(), relativePath);
+            } else {
+                JsonPointer relativePath = computeRelativePath(diff2.getPath(), i, j - 1, shifts); // diff1's add should also be considered
+                moveDiff = new Diff(Operation.MOVE, relativePath, diff1.getPath());
             }
+            pending[j] = null;
+            pending[i] = moveDiff;
+            shifts.clear(i);
+            shifts.clear(j);
         }
-    }
 
-    private ArrayNode getJsonNodes() {
-        JsonNodeFactory FACTORY = JsonNodeFactory.instance;
-        final ArrayNode patch = FACTORY.arrayNode();
-        for (Diff diff : diffs) {
-            ObjectNode jsonNode = getJsonNode(FACTORY, diff, flags);
-            patch.add(jsonNode);
+        diffs.clear();
+        for (Diff diff : pending) {
+            if (diff != null) diffs.add(diff);
         }
-        return patch;
-    }
-
-    private static ObjectNode getJsonNode(JsonNodeFactory FACTORY, Diff diff, EnumSet<DiffFlags> flags) {
-        ObjectNode jsonNode = FACTORY.objectNode();
-        jsonNode.put(Constants.OP, diff.getOperation().rfcName());
-
-        switch (diff.getOperation()) {
-            case MOVE:
-            case COPY:
-                jsonNode.put(Constants.FROM, diff.getPath().toString());    // required {from} only in case of Move Operation
-                jsonNode.put(Constants.PATH, diff.getToPath().toString());  // destination Path
-                break;
-
-            case REMOVE:
-                jsonNode.put(Constants.PATH, diff.getPath().toString());
-                if (!flags.contains(DiffFlags.OMIT_VALUE_ON_REMOVE))
-                    jsonNode.set(Constants.VALUE, diff.getValue());
-                break;
-
-            case REPLACE:
-                if (flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE)) {
-                    jsonNode.set(Constants.FROM_VALUE, diff.getSrcValue());
-                } else if (flags.contains(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE_AS_VALUE)) {
-                    jsonNode.set(Constants.VALUE, diff.getSrcValue());
-                }
-            case ADD:
-            case TEST:
-                jsonNode.put(Constants.PATH, diff.getPath().toString());
-                if (!jsonNode.has(Constants.VALUE)) {
-                    jsonNode.set(Constants.VALUE, diff.getValue());
-                }
-                break;
+    }
 
-            default:
-                // Safety net
-                throw new IllegalArgumentException("Unknown operation specified:" + diff.getOperation());
-        }
+    private static boolean isAddOrRemove(Diff diff) {
+        return Operation.ADD == diff.getOperation() || Operation.REMOVE == diff.getOperation();
+    }
 
-        return jsonNode;
+    //Note : only to be used for arrays
+    //Finds the longest common Ancestor ending at Array
+    //Shifts every array index along the path by the adds & removes made to that array by diffs startIdx..endIdx
+    private static JsonPointer computeRelativePath(JsonPointer path, int startIdx, int endIdx, ArrayShiftIndex shifts) {
+        List<JsonPointer.RefToken> tokens = null;
+        JsonPointer parent = path;
+        for (int i = path.size() - 1; i >= 0; i--) {
+            parent = parent.getParent();
+            int shift = shifts.shift(parent, startIdx, endIdx);
+            if (shift != 0) {
+                if (tokens == null) tokens = path.decompose();
+                int currValue = tokens.get(i).getIndex();
+                tokens.set(i, new JsonPointer.RefToken(currValue + shift));
+            }
+        }
+        return tokens == null ? path : new JsonPointer(tokens);
     }
 
-    private void generateDiffs(JsonPointer path, JsonNode source, JsonNode target) {
-        if (!source.equals(target)) {
+    void generateDiffs(JsonPointer path, JsonNode source, JsonNode target) {
+        if (!digests.equal(source, target)) {
 
             final NodeType sourceType = NodeType.getNodeType(source);
             final NodeType targetType = NodeType.getNodeType(target);
@@ -373,26 +425,14 @@ public final class JsonDiff {
             if (sourceType == NodeType.ARRAY && targetType == NodeType.ARRAY) {
                 //both are arrays
 
-                JsonNode firstElement = source.get(0);
-                HashMap<String, JsonNode> sourceJNodeById = new HashMap<>();
-                HashMap<String, JsonNode> targetJNodeById = new HashMap<>();
-                Optional<String> idKey = firstElement != null ? Arrays.stream(idsHandledByArrays).filter(firstElement::has).findFirst() : Optional.empty();
-                if (flags.contains(DiffFlags.TREAT_ARRAYS_AS_SETS) && idKey.isPresent()) {
-                    int i = 0;
-                    for (final JsonNode objNode : source) {
-                        String id = objNode.get(idKey.get()).asText();
-                        sourceJNodeById.put(id, objNode);
-                        sourceIndexById.put(id, i);
-                        i++;
-                    }
-                    int j = 0;
-                    for (final JsonNode objNode : target) {
-                        String id = objNode.get(idKey.get()).asText();
-                        targetJNodeById.put(id, objNode);
-                        targetIndexById.put(id, j);
-                        j++;
-                    }
-                    generateDiffs(path, mapper.valueToTree(sourceJNodeById), mapper.valueToTree(targetJNodeById));
+                int[] matches = null;
+                if (flags.contains(DiffFlags.TREAT_ARRAYS_AS_SETS)) {
+                    String idField = KeyedArrayDiff.idField(source);
+                    if (idField != null)
+                        matches = KeyedArrayDiff.join(source, target, idField);
+                }
+                if (matches != null) {
+                    compareKeyedArray(path, source, target, matches);
                 } else {
                     compareArray(path, source, target);
                 }
@@ -402,13 +442,22 @@ public final class JsonDiff {
             } else {
                 //can be replaced
                 if (flags.contains(DiffFlags.EMIT_TEST_OPERATIONS))
-                    diffs.add(new Diff(Operation.TEST, path, source));
-                diffs.add(Diff.generateDiff(Operation.REPLACE, path, source, target));
+                    emit(new Diff(Operation.TEST, path, source));
+                emit(Diff.generateDiff(Operation.REPLACE, path, source, target));
             }
         }
     }
 
     private void compareArray(JsonPointer path, JsonNode source, JsonNode target) {
+        compareArray(path, source, target, 0);
+    }
+
+    /**
+     * Compares the arrays as the elements of a larger pair of arrays that start with {@code offset}
+     * equal elements.
+     */
+    void compareArray(JsonPointer path, JsonNode source, JsonNode target, int offset) {
+        ForkScope forked = fork(source, target);
         List<JsonNode> lcs = getLCS(source, target);
         int srcIdx = 0;
         int targetIdx = 0;
@@ -417,36 +466,36 @@ public final class JsonDiff {
         int targetSize = target.size();
         int lcsSize = lcs.size();
 
-        int pos = 0;
+        int pos = offset;
         while (lcsIdx < lcsSize) {
             JsonNode lcsNode = lcs.get(lcsIdx);
             JsonNode srcNode = source.get(srcIdx);
             JsonNode targetNode = target.get(targetIdx);
 
 
-            if (lcsNode.equals(srcNode) && lcsNode.equals(targetNode)) { // Both are same as lcs node, nothing to do here
+            if (digests.equal(lcsNode, srcNode) && digests.equal(lcsNode, targetNode)) { // Both are same as lcs node, nothing to do here
                 srcIdx++;
                 targetIdx++;
                 lcsIdx++;
                 pos++;
             } else {
-                if (lcsNode.equals(srcNode)) { // src node is same as lcs, but not targetNode
+                if (digests.equal(lcsNode, srcNode)) { // src node is same as lcs, but not targetNode
                     //addition
                     JsonPointer currPath = path.append(pos);
-                    diffs.add(Diff.generateDiff(Operation.ADD, currPath, targetNode));
+                    emit(Diff.generateDiff(Operation.ADD, currPath, targetNode));
                     pos++;
                     targetIdx++;
-                } else if (lcsNode.equals(targetNode)) { //targetNode node is same as lcs, but not src
+                } else if (digests.equal(lcsNode, targetNode)) { //targetNode node is same as lcs, but not src
                     //removal,
                     JsonPointer currPath = path.append(pos);
                     if (flags.contains(DiffFlags.EMIT_TEST_OPERATIONS))
-                        diffs.add(new Diff(Operation.TEST, currPath, srcNode));
-                    diffs.add(Diff.generateDiff(Operation.REMOVE, currPath, srcNode));
+                        emit(new Diff(Operation.TEST, currPath, srcNode));
+                    emit(Diff.generateDiff(Operation.REMOVE, currPath, srcNode));
                     srcIdx++;
                 } else {
                     JsonPointer currPath = path.append(pos);
                     //both are unequal to lcs node
-                    generateDiffs(currPath, srcNode, targetNode);
+                    diffChild(currPath, srcNode, targetNode);
                     srcIdx++;
                     targetIdx++;
                     pos++;
@@ -458,91 +507,215 @@ public final class JsonDiff {
             JsonNode srcNode = source.get(srcIdx);
             JsonNode targetNode = target.get(targetIdx);
             JsonPointer currPath = path.append(pos);
-            generateDiffs(currPath, srcNode, targetNode);
+            diffChild(currPath, srcNode, targetNode);
             srcIdx++;
             targetIdx++;
             pos++;
         }
         pos = addRemaining(path, target, pos, targetIdx, targetSize);
         removeRemaining(path, pos, srcIdx, srcSize, source);
+        join(forked);
     }
 
     private void removeRemaining(JsonPointer path, int pos, int srcIdx, int srcSize, JsonNode source) {
         while (srcIdx < srcSize) {
             JsonPointer currPath = path.append(pos);
             if (flags.contains(DiffFlags.EMIT_TEST_OPERATIONS))
-                diffs.add(new Diff(Operation.TEST, currPath, source.get(srcIdx)));
-            diffs.add(Diff.generateDiff(Operation.REMOVE, currPath, source.get(srcIdx)));
+                emit(new Diff(Operation.TEST, currPath, source.get(srcIdx)));
+            emit(Diff.generateDiff(Operation.REMOVE, currPath, source.get(srcIdx)));
             srcIdx++;
         }
     }
 
+    /**
+     * Compares arrays whose elements were paired by id. Paired elements are compared at their source
+     * index, unpaired source elements are then removed from the back, and unpaired target elements are
+     * finally inserted at their target index, which the array has grown to by then.
+     */
+    private void compareKeyedArray(JsonPointer path, JsonNode source, JsonNode target, int[] matches) {
+        ForkScope forked = fork(source, target);
+        boolean[] matched = new boolean[target.size()];
+        for (int i = 0; i < matches.length; i++) {
+            int j = matches[i];
+            if (j != KeyedArrayDiff.UNMATCHED) {
+                matched[j] = true;
+                diffChild(path.append(i), source.get(i), target.get(j));
+            }
+        }
+        for (int i = matches.length - 1; i >= 0; i--) {
+            if (matches[i] == KeyedArrayDiff.UNMATCHED) {
+                JsonPointer currPath = path.append(i);
+                if (flags.contains(DiffFlags.EMIT_TEST_OPERATIONS))
+                    emit(new Diff(Operation.TEST, currPath, source.get(i)));
+                emit(Diff.generateDiff(Operation.REMOVE, currPath, source.get(i)));
+            }
+        }
+        for (int j = 0; j < matched.length; j++) {
+            if (!matched[j])
+                emit(Diff.generateDiff(Operation.ADD, path.append(j), target.get(j)));
+        }
+        join(forked);
+    }
+
     private int addRemaining(JsonPointer path, JsonNode target, int pos, int targetIdx, int targetSize) {
         while (targetIdx < targetSize) {
             JsonNode jsonNode = target.get(targetIdx);
             JsonPointer currPath = path.append(pos);
-            diffs.add(Diff.generateDiff(Operation.ADD, currPath, jsonNode.deepCopy()));
+            emit(Diff.generateDiff(Operation.ADD, currPath, jsonNode.deepCopy()));
             pos++;
             targetIdx++;
         }
         return pos;
     }
 
-    private void compareObjects(JsonPointer path, JsonNode source, JsonNode target) {
+    void compareObjects(JsonPointer path, JsonNode source, JsonNode target) {
+        ForkScope forked = fork(source, target);
         Iterator<String> keysFromSrc = source.fieldNames();
         while (keysFromSrc.hasNext()) {
             String key = keysFromSrc.next();
             if (!target.has(key)) {
                 //remove case
-                if (flags.contains(DiffFlags.TREAT_ARRAYS_AS_SETS) && sourceIndexById.containsKey(key)) {
-                    JsonPointer currPath = path.append(sourceIndexById.get(key));
-                    sourceIndexById.remove(key);
-                    if (flags.contains(DiffFlags.EMIT_TEST_OPERATIONS))
-                        diffs.add(new Diff(Operation.TEST, currPath, source.get(key)));
-                    diffs.add(Diff.generateDiff(Operation.REMOVE, currPath, source.get(key)));
-                    continue;
-                }
                 JsonPointer currPath = path.append(key);
                 if (flags.contains(DiffFlags.EMIT_TEST_OPERATIONS))
-                    diffs.add(new Diff(Operation.TEST, currPath, source.get(key)));
-                diffs.add(Diff.generateDiff(Operation.REMOVE, currPath, source.get(key)));
+                    emit(new Diff(Operation.TEST, currPath, source.get(key)));
+                emit(Diff.generateDiff(Operation.REMOVE, currPath, source.get(key)));
                 continue;
             }
-            if (flags.contains(DiffFlags.TREAT_ARRAYS_AS_SETS) && sourceIndexById.containsKey(key)) {
-                JsonPointer currPath = path.append(sourceIndexById.get(key));
-                sourceIndexById.remove(key);
-                generateDiffs(currPath, source.get(key), target.get(key));
-            } else if (flags.contains(DiffFlags.TREAT_ARRAYS_AS_SETS) && targetIndexById.containsKey(key)){
-                JsonPointer currPath = path.append(targetIndexById.get(key));
-                targetIndexById.remove(key);
-                generateDiffs(currPath, source.get(key), target.get(key));
-            } else {
-                JsonPointer currPath = path.append(key);
-                generateDiffs(currPath, source.get(key), target.get(key));
-            }
+            JsonPointer currPath = path.append(key);
+            diffChild(currPath, source.get(key), target.get(key));
         }
         Iterator<String> keysFromTarget = target.fieldNames();
         while (keysFromTarget.hasNext()) {
             String key = keysFromTarget.next();
             if (!source.has(key)) {
                 //add case
-                if (flags.contains(DiffFlags.TREAT_ARRAYS_AS_SETS) && sourceIndexById.containsKey(key)) {
-                    JsonPointer currPath = path.append(sourceIndexById.get(key));
-                    sourceIndexById.remove(key);
-                    diffs.add(Diff.generateDiff(Operation.ADD, currPath, target.get(key)));
-                } else if (flags.contains(DiffFlags.TREAT_ARRAYS_AS_SETS) && targetIndexById.containsKey(key)) {
-                    JsonPointer currPath = path.append(targetIndexById.get(key));
-                    targetIndexById.remove(key);
-                    diffs.add(Diff.generateDiff(Operation.ADD, currPath, target.get(key)));
+                JsonPointer currPath = path.append(key);
+                emit(Diff.generateDiff(Operation.ADD, currPath, target.get(key)));
+            }
+        }
+        join(forked);
+    }
+
+    private List<JsonNode> getLCS(final JsonNode first, final JsonNode second) {
+        return myersLcs.longestCommonSubsequence(first, second);
+    }
+
+    private void diffChild(JsonPointer path, JsonNode source, JsonNode target) {
+        if (scope != null)
+            scope.fork(path, source, target);
+        else
+            generateDiffs(path, source, target);
+    }
+
+    /**
+     * Starts batching the child comparisons of a large container into subtasks, if parallel diffing is
+     * enabled.
+     */
+    private ForkScope fork(JsonNode source, JsonNode target) {
+        if (pool == null || source.size() < 2)
+            return null;
+        if (digests.size(source) + digests.size(target) < 2 * forkThreshold)
+            return null;
+        return scope = new ForkScope();
+    }
+
+    private void join(ForkScope forked) {
+        if (forked == null) return;
+        scope = null;
+        forked.join();
+    }
+
+    /**
+     * The diffs of one container in patch order, where the child comparisons are deferred to
+     * {@link SubtreeTask}s and their results spliced back in place once all tasks completed.
+     */
+    private final class ForkScope {
+        private final List<Object> entries = new ArrayList<Object>(); // Diff or Subtree
+        private final List<SubtreeTask> tasks = new ArrayList<SubtreeTask>();
+        private SubtreeTask current;
+
+        void add(Diff diff) {
+            entries.add(diff);
+        }
+
+        void fork(JsonPointer path, JsonNode source, JsonNode target) {
+            if (current == null) {
+                current = new SubtreeTask(JsonDiff.this);
+                tasks.add(current);
+            }
+            entries.add(current.add(path, source, target));
+            if (current.weight >= forkThreshold)
+                current = null;
+        }
+
+        void join() {
+            if (ForkJoinTask.getPool() == pool) {
+                ForkJoinTask.invokeAll(tasks);
+            } else {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            }
+            for (Object entry : entries) {
+                if (entry instanceof Diff) {
+                    emit((Diff) entry);
                 } else {
-                    JsonPointer currPath = path.append(key);
-                    diffs.add(Diff.generateDiff(Operation.ADD, currPath, target.get(key)));
+                    Subtree subtree = (Subtree) entry;
+                    List<Diff> diffs = subtree.task.engine.diffs;
+                    for (int i = subtree.task.start(subtree.index), end = subtree.task.ends[subtree.index]; i < end; i++)
+                        emit(diffs.get(i));
                 }
             }
         }
     }
 
-    private static List<JsonNode> getLCS(final JsonNode first, final JsonNode second) {
-        return ListUtils.longestCommonSubsequence(InternalUtils.toList((ArrayNode) first), InternalUtils.toList((ArrayNode) second));
+    private static final class Subtree {
+        private final SubtreeTask task;
+        private final int index;
+
+        private Subtree(SubtreeTask task, int index) {
+            this.task = task;
+            this.index = index;
+        }
+    }
+
+    /** Compares a run of sibling subtrees with an engine of its own. */
+    private static final class SubtreeTask extends RecursiveAction {
+        private final JsonDiff parent;
+        private final List<JsonPointer> paths = new ArrayList<JsonPointer>();
+        private final List<JsonNode> sources = new ArrayList<JsonNode>();
+        private final List<JsonNode> targets = new ArrayList<JsonNode>();
+        private int weight;
+        private JsonDiff engine;
+        private int[] ends;
+
+        private SubtreeTask(JsonDiff parent) {
+            this.parent = parent;
+        }
+
+        private Subtree add(JsonPointer path, JsonNode source, JsonNode target) {
+            paths.add(path);
+            sources.add(source);
+            targets.add(target);
+            weight += parent.digests.size(source) + parent.digests.size(target);
+            return new Subtree(this, paths.size() - 1);
+        }
+
+        private int start(int index) {
+            return index == 0 ? 0 : ends[index - 1];
+        }
+
+        @Override
+        protected void compute() {
+            engine = new JsonDiff(parent);
+            ends = new int[paths.size()];
+            for (int i = 0; i < ends.length; i++) {
+                engine.generateDiffs(paths.get(i), sources.get(i), targets.get(i));
+                ends[i] = engine.diffs.size();
+            }
+        }
     }
 }
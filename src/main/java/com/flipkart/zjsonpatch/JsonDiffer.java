@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A reusable JSON diff engine configured once from a set of {@link DiffFlags}.
+ *
+ * <p>Instances are immutable and thread safe; build one per configuration and share it:
+ *
+ * <pre>
+ *      JsonDiffer differ = JsonDiffer.of(EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION));
+ *      JsonNode patch = differ.diff(source, target);
+ * </pre>
+ *
+ * <p>The scratch state of a diff (LCS buffers, subtree digest caches, index maps) is pooled per
+ * thread and reused across calls, so steady-state diffing allocates little beyond the patch itself.
+ * {@link JsonDiff#asJson} is a convenience wrapper around shared instances of this class.
+ *
+ * <p>Only the differs returned by {@link #of(EnumSet)} and {@link #defaults()} are shared. The ones
+ * returned by {@link #withMinCopySize(int)} and {@link #withParallelism(ForkJoinPool)} for other
+ * settings are new instances with their own pool of engines: keep and reuse them rather than deriving
+ * them again for every diff.
+ */
+public final class JsonDiffer {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    // Keyed by flags alone, so it holds at most one differ per combination of flags
+    private static final ConcurrentMap<EnumSet<DiffFlags>, JsonDiffer> SHARED =
+            new ConcurrentHashMap<EnumSet<DiffFlags>, JsonDiffer>();
+    private static final JsonDiffer DEFAULT = of(DiffFlags.defaults());
+
+    private final EnumSet<DiffFlags> flags;
+    private final int minCopySize;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<JsonDiff> engines = new ThreadLocal<JsonDiff>() {
+        @Override
+        protected JsonDiff initialValue() {
+            return newEngine();
+        }
+    };
+
+    private JsonDiffer(EnumSet<DiffFlags> flags, int minCopySize, ForkJoinPool pool) {
+        this.flags = flags.clone();
+        this.minCopySize = minCopySize;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns a differ configured with {@link DiffFlags#defaults()}.
+     */
+    public static JsonDiffer defaults() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a differ configured with the given flags. Differs are shared between callers
+     * asking for the same flags. The set is copied, later modifications don't affect the differ.
+     */
+    public static JsonDiffer of(EnumSet<DiffFlags> flags) {
+        JsonDiffer differ = SHARED.get(flags);
+        if (differ == null) {
+            JsonDiffer created = new JsonDiffer(flags, JsonDiff.DEFAULT_MIN_COPY_SIZE, null);
+            differ = SHARED.putIfAbsent(created.flags, created);
+            if (differ == null)
+                differ = created;
+        }
+        return differ;
+    }
+
+    /**
+     * Returns a sequential differ for the given flags and minimum copy size: the shared one for the
+     * default size, a new one otherwise.
+     */
+    private static JsonDiffer of(EnumSet<DiffFlags> flags, int minCopySize) {
+        if (minCopySize == JsonDiff.DEFAULT_MIN_COPY_SIZE)
+            return of(flags);
+        return new JsonDiffer(flags, checkMinCopySize(minCopySize), null);
+    }
+
+    static int checkMinCopySize(int minCopySize) {
+        if (minCopySize < 1)
+            throw new IllegalArgumentException("Minimum copy size must be positive: " + minCopySize);
+        return minCopySize;
+    }
+
+    /**
+     * Returns a differ that only emits {@link Operation#COPY} operations for values spanning at least
+     * {@code minCopySize} JSON nodes (a scalar counts as one node, a container as one plus the size of
+     * its members). Additions of smaller values stay {@link Operation#ADD} operations. Has no effect
+     * with {@link DiffFlags#OMIT_COPY_OPERATION}.
+     *
+     * <p>Unless it has the default settings, the returned differ is a new instance with its own pool
+     * of engines; keep it for later diffs instead of calling this method each time.
+     *
+     * @param minCopySize minimum number of nodes in a copied value; the default is 1
+     * @throws IllegalArgumentException if {@code minCopySize} is not positive
+     */
+    public JsonDiffer withMinCopySize(int minCopySize) {
+        checkMinCopySize(minCopySize);
+        if (minCopySize == this.minCopySize)
+            return this;
+        if (pool == null)
+            return of(flags, minCopySize);
+        return new JsonDiffer(flags, minCopySize, pool);
+    }
+
+    /**
+     * Returns a differ that compares the members of large objects and the positionally matched
+     * elements of large arrays as parallel subtasks in {@code pool}. The patch is identical to the
+     * one computed sequentially.
+     *
+     * <p>Differs with a pool are not shared: each call returns a new instance with its own pool of
+     * engines, which should be kept and reused for the diffs run in {@code pool}.
+     *
+     * @param pool the pool to run subtasks in, or {@code null} to diff sequentially
+     */
+    public JsonDiffer withParallelism(ForkJoinPool pool) {
+        if (pool == this.pool)
+            return this;
+        if (pool == null)
+            return of(flags, minCopySize);
+        return new JsonDiffer(flags, minCopySize, pool);
+    }
+
+    public EnumSet<DiffFlags> getFlags() {
+        return flags.clone();
+    }
+
+    public int getMinCopySize() {
+        return minCopySize;
+    }
+
+    /**
+     * Computes a JSON patch that turns {@code source} into {@code target}.
+     * Either node may be {@code null}, which produces a root add or remove operation.
+     *
+     * @return the patch as an array of RFC 6902 operations
+     */
+    public JsonNode diff(JsonNode source, JsonNode target) {
+        return engine().diff(source, target);
+    }
+
+    /**
+     * Computes the patch from {@code source} to {@code target} as {@link #diff(JsonNode, JsonNode)} does,
+     * together with its inverse from {@code target} back to {@code source}, in a single pass. The inverse
+     * is derived from the patch, whose operations carry the values they remove or replace, and is written
+     * with the same flags. It contains no {@link Operation#TEST} operations.
+     */
+    public InvertiblePatch diffWithInverse(JsonNode source, JsonNode target) {
+        DiffWriter.ToArrayNode out = new DiffWriter.ToArrayNode(flags);
+        DiffWriter.ToArrayNode inverse = new DiffWriter.ToArrayNode(flags);
+        engine().diff(source, target, out, inverse);
+        return new InvertiblePatch(out.getPatch(), inverse.getPatch());
+    }
+
+    /**
+     * Computes the same patch as {@link #diff(JsonNode, JsonNode)} but passes its operations to
+     * {@code sink} one by one instead of building a patch document.
+     *
+     * <p>With both {@link DiffFlags#OMIT_MOVE_OPERATION} and {@link DiffFlags#OMIT_COPY_OPERATION},
+     * operations reach the sink while the documents are still being compared and the patch is never
+     * held in memory. Without a pool ({@link #withParallelism(ForkJoinPool)}), no subtree digests are
+     * cached either: memory beyond the documents is bounded by the nesting depth plus the LCS scratch of
+     * the arrays being compared, and equal subtrees are compared with {@link JsonNode#equals} at each
+     * level instead of once. Otherwise the move and copy passes need the complete list of operations, which
+     * is buffered and then replayed to the sink.
+     */
+    public void diff(JsonNode source, JsonNode target, DiffSink sink) {
+        engine().diff(source, target, new DiffWriter.ToSink(flags, sink));
+    }
+
+    /**
+     * Writes the patch from {@code source} to {@code target} as a JSON array to {@code generator}.
+     * The generator is neither flushed nor closed. Buffering follows the rules of
+     * {@link #diff(JsonNode, JsonNode, DiffSink)}.
+     */
+    public void diff(JsonNode source, JsonNode target, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        try {
+            engine().diff(source, target, new DiffWriter.ToGenerator(flags, generator));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Writes the patch from {@code source} to {@code target} as UTF-8 encoded JSON to {@code out}.
+     * The stream is flushed but not closed.
+     */
+    public void diff(JsonNode source, JsonNode target, OutputStream out) throws IOException {
+        JsonGenerator generator = FACTORY.createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            diff(source, target, generator);
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Computes the patch between the next JSON value of each parser without parsing the documents into
+     * trees up front. The parsers are walked in lockstep and only the parts that differ are materialized:
+     * the remaining fields of objects whose field order diverges, and bounded windows of array elements
+     * around each difference. Unchanged subtrees under matching fields are skipped token by token.
+     *
+     * <p>Operations are the ones {@link #diff(JsonNode, JsonNode)} computes for the parsed documents,
+     * except that no {@link Operation#COPY} operations are produced, as if
+     * {@link DiffFlags#OMIT_COPY_OPERATION} was set. Arrays whose differing part doesn't fit in a window
+     * are diffed window by window, which yields a valid patch that may be longer than the one computed
+     * for the whole arrays. A parser without content stands for a missing
+     * document. The parsers are left after the compared values and are not closed.
+     */
+    public JsonNode diff(JsonParser source, JsonParser target) throws IOException {
+        DiffWriter.ToArrayNode out = new DiffWriter.ToArrayNode(flags);
+        engine().diff(source, target, out);
+        return out.getPatch();
+    }
+
+    /**
+     * Computes the patch between the next JSON value of each parser as described in
+     * {@link #diff(JsonParser, JsonParser)}, passing the operations to {@code sink}. With
+     * {@link DiffFlags#OMIT_MOVE_OPERATION}, operations reach the sink while the inputs are read.
+     */
+    public void diff(JsonParser source, JsonParser target, DiffSink sink) throws IOException {
+        engine().diff(source, target, new DiffWriter.ToSink(flags, sink));
+    }
+
+    /**
+     * Computes the patch between two JSON documents as described in
+     * {@link #diff(JsonParser, JsonParser)}. The streams are not closed.
+     */
+    public JsonNode diff(InputStream source, InputStream target) throws IOException {
+        JsonParser sourceParser = FACTORY.createParser(source);
+        JsonParser targetParser = FACTORY.createParser(target);
+        sourceParser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        targetParser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        try {
+            return diff(sourceParser, targetParser);
+        } finally {
+            sourceParser.close();
+            targetParser.close();
+        }
+    }
+
+    private JsonDiff engine() {
+        JsonDiff engine = engines.get();
+        if (engine.isBusy()) {
+            // Re-entrant call on this thread, e.g. from a sink; don't disturb the pooled engine
+            engine = newEngine();
+        }
+        return engine;
+    }
+
+    private JsonDiff newEngine() {
+        return new JsonDiff(flags, minCopySize, pool, JsonDiff.DEFAULT_FORK_THRESHOLD);
+    }
+}
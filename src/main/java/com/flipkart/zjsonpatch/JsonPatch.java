@@ -17,10 +17,10 @@
 package com.flipkart.zjsonpatch;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.NullNode;
 
+import java.util.Arrays;
 import java.util.EnumSet;
-import java.util.Iterator;
+import java.util.List;
 
 /**
  * User: gopi.vishwakarma
@@ -31,91 +31,107 @@ public final class JsonPatch {
     private JsonPatch() {
     }
 
-    private static JsonNode getPatchAttr(JsonNode jsonNode, String attr) {
-        JsonNode child = jsonNode.get(attr);
-        if (child == null)
-            throw new InvalidJsonPatchException("Invalid JSON Patch payload (missing '" + attr + "' field)");
-        return child;
+    /**
+     * Validates and parses a patch for repeated application.
+     *
+     * @throws InvalidJsonPatchException if the patch is malformed
+     */
+    public static CompiledPatch compile(JsonNode patch, EnumSet<CompatibilityFlags> flags) throws InvalidJsonPatchException {
+        return CompiledPatch.compile(patch, flags, true);
     }
 
-    private static JsonNode getPatchAttrWithDefault(JsonNode jsonNode, String attr, JsonNode defaultValue) {
-        JsonNode child = jsonNode.get(attr);
-        if (child == null)
-            return defaultValue;
-        else
-            return child;
+    public static CompiledPatch compile(JsonNode patch) throws InvalidJsonPatchException {
+        return compile(patch, CompatibilityFlags.defaults());
     }
 
-    private static void process(JsonNode patch, JsonPatchProcessor processor, EnumSet<CompatibilityFlags> flags)
+    /**
+     * Validates and parses a patch like {@link #compile(JsonNode, EnumSet)}, looking up its paths in
+     * {@code cache} instead of parsing them again. Worthwhile when patches keep using a limited set of paths.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     * @throws InvalidJsonPatchException if the patch is malformed
+     */
+    public static CompiledPatch compile(JsonNode patch, EnumSet<CompatibilityFlags> flags, JsonPointerCache cache)
             throws InvalidJsonPatchException {
+        return CompiledPatch.compile(patch, flags, true, cache);
+    }
+
+    /**
+     * Rewrites a patch into an equivalent one with redundant operations removed: operations overridden by
+     * a later one on the same path (such as an {@code add} followed by a {@code replace} or {@code remove})
+     * are folded into one, changes below a value the patch adds are applied to that value, and {@code test}
+     * operations known to pass are dropped. The document is not needed; operations are only reordered or
+     * merged where that holds for any document.
+     *
+     * <p>Applied to a document that the original patch applies to, the result is the same. As folding
+     * removes intermediate operations, the optimized patch may however apply where the original one fails
+     * at such an operation, e.g. a {@code replace} of a missing field that is later removed.
+     *
+     * @return the optimized patch, a new node
+     * @throws InvalidJsonPatchException if the patch is malformed
+     */
+    public static JsonNode optimize(JsonNode patch, EnumSet<CompatibilityFlags> flags) throws InvalidJsonPatchException {
+        return PatchOptimizer.optimize(patch, flags);
+    }
+
+    public static JsonNode optimize(JsonNode patch) throws InvalidJsonPatchException {
+        return optimize(patch, CompatibilityFlags.defaults());
+    }
+
+    /**
+     * Composes a sequence of patches into one patch that has the same effect as applying them in order,
+     * optimized as described in {@link #optimize(JsonNode, EnumSet)}. Operations are rebased through
+     * {@code move} operations of enclosing paths so that they can be folded into earlier ones, and
+     * changes to values added by an earlier patch are applied to those values.
+     *
+     * @return the composed patch, a new node
+     * @throws InvalidJsonPatchException if one of the patches is malformed
+     */
+    public static JsonNode compose(List<JsonNode> patches, EnumSet<CompatibilityFlags> flags) throws InvalidJsonPatchException {
+        return PatchOptimizer.compose(patches, flags);
+    }
 
-        if (!patch.isArray())
-            throw new InvalidJsonPatchException("Invalid JSON Patch payload (not an array)");
-        Iterator<JsonNode> operations = patch.iterator();
-        while (operations.hasNext()) {
-            JsonNode jsonNode = operations.next();
-            if (!jsonNode.isObject()) throw new InvalidJsonPatchException("Invalid JSON Patch payload (not an object)");
-            Operation operation = Operation.fromRfcName(getPatchAttr(jsonNode, Constants.OP).textValue());
-            JsonPointer path = JsonPointer.parse(getPatchAttr(jsonNode, Constants.PATH).textValue());
-
-            try {
-                switch (operation) {
-                    case REMOVE: {
-                        processor.remove(path);
-                        break;
-                    }
-
-                    case ADD: {
-                        JsonNode value;
-                        if (!flags.contains(CompatibilityFlags.MISSING_VALUES_AS_NULLS))
-                            value = getPatchAttr(jsonNode, Constants.VALUE);
-                        else
-                            value = getPatchAttrWithDefault(jsonNode, Constants.VALUE, NullNode.getInstance());
-                        processor.add(path, value.deepCopy());
-                        break;
-                    }
-
-                    case REPLACE: {
-                        JsonNode value;
-                        if (!flags.contains(CompatibilityFlags.MISSING_VALUES_AS_NULLS))
-                            value = getPatchAttr(jsonNode, Constants.VALUE);
-                        else
-                            value = getPatchAttrWithDefault(jsonNode, Constants.VALUE, NullNode.getInstance());
-                        processor.replace(path, value.deepCopy());
-                        break;
-                    }
-
-                    case MOVE: {
-                        JsonPointer fromPath = JsonPointer.parse(getPatchAttr(jsonNode, Constants.FROM).textValue());
-                        processor.move(fromPath, path);
-                        break;
-                    }
-
-                    case COPY: {
-                        JsonPointer fromPath = JsonPointer.parse(getPatchAttr(jsonNode, Constants.FROM).textValue());
-                        processor.copy(fromPath, path);
-                        break;
-                    }
-
-                    case TEST: {
-                        JsonNode value;
-                        if (!flags.contains(CompatibilityFlags.MISSING_VALUES_AS_NULLS))
-                            value = getPatchAttr(jsonNode, Constants.VALUE);
-                        else
-                            value = getPatchAttrWithDefault(jsonNode, Constants.VALUE, NullNode.getInstance());
-                        processor.test(path, value.deepCopy());
-                        break;
-                    }
-                }
-            }
-            catch (JsonPointerEvaluationException e) {
-                throw new JsonPatchApplicationException(e.getMessage(), operation, e.getPath());
-            }
-        }
+    public static JsonNode compose(JsonNode... patches) throws InvalidJsonPatchException {
+        return compose(Arrays.asList(patches), CompatibilityFlags.defaults());
+    }
+
+    /**
+     * Computes the patch that reverts {@code patch} on {@code source}, without modifying {@code source}
+     * and at a cost proportional to the patch rather than the document.
+     *
+     * @see CompiledPatch#invert(JsonNode)
+     */
+    public static JsonNode invert(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) throws JsonPatchApplicationException {
+        return invert(patch, source, flags, null);
+    }
+
+    /**
+     * Computes the patch that reverts {@code patch} on {@code source}, looking up its paths in {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     */
+    public static JsonNode invert(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                  JsonPointerCache cache) throws JsonPatchApplicationException {
+        return CompiledPatch.compile(patch, flags, false, cache).invert(source);
+    }
+
+    public static JsonNode invert(JsonNode patch, JsonNode source) throws JsonPatchApplicationException {
+        return invert(patch, source, CompatibilityFlags.defaults());
     }
 
     public static void validate(JsonNode patch, EnumSet<CompatibilityFlags> flags) throws InvalidJsonPatchException {
-        process(patch, NoopProcessor.INSTANCE, flags);
+        validate(patch, flags, null);
+    }
+
+    /**
+     * Validates a patch, looking up its paths in {@code cache} so that applying it with the same cache
+     * afterwards doesn't parse them again.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     */
+    public static void validate(JsonNode patch, EnumSet<CompatibilityFlags> flags, JsonPointerCache cache)
+            throws InvalidJsonPatchException {
+        CompiledPatch.compile(patch, flags, false, cache);
     }
 
     public static void validate(JsonNode patch) throws InvalidJsonPatchException {
@@ -123,21 +139,190 @@ public final class JsonPatch {
     }
 
     public static JsonNode apply(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) throws JsonPatchApplicationException {
-        CopyingApplyProcessor processor = new CopyingApplyProcessor(source, flags);
-        process(patch, processor, flags);
-        return processor.result();
+        return apply(patch, source, flags, null);
     }
 
     public static JsonNode apply(JsonNode patch, JsonNode source) throws JsonPatchApplicationException {
         return apply(patch, source, CompatibilityFlags.defaults());
     }
 
+    /**
+     * Applies a patch to a copy of {@code source}, looking up its paths in {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     * @see #compile(JsonNode, EnumSet, JsonPointerCache)
+     */
+    public static JsonNode apply(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                 JsonPointerCache cache) throws JsonPatchApplicationException {
+        return CompiledPatch.compile(patch, flags, false, cache).apply(source);
+    }
+
+    /**
+     * Applies a patch to a copy of {@code source}, returning the failing operation instead of throwing
+     * if it cannot be applied.
+     *
+     * @throws InvalidJsonPatchException if the patch is malformed
+     * @see CompiledPatch#tryApply(JsonNode)
+     */
+    public static JsonPatchResult tryApply(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) throws InvalidJsonPatchException {
+        return tryApply(patch, source, flags, null);
+    }
+
+    /**
+     * Applies a patch to a copy of {@code source} like {@link #tryApply(JsonNode, JsonNode, EnumSet)},
+     * looking up its paths in {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     */
+    public static JsonPatchResult tryApply(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                           JsonPointerCache cache) throws InvalidJsonPatchException {
+        return CompiledPatch.compile(patch, flags, false, cache).tryApply(source);
+    }
+
+    public static JsonPatchResult tryApply(JsonNode patch, JsonNode source) throws InvalidJsonPatchException {
+        return tryApply(patch, source, CompatibilityFlags.defaults());
+    }
+
+    /**
+     * Applies a patch without modifying {@code source}, copying only the containers along the modified
+     * paths and sharing every other subtree between {@code source} and the result.
+     *
+     * @see CompiledPatch#applyCopyOnWrite(JsonNode)
+     */
+    public static JsonNode applyCopyOnWrite(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) throws JsonPatchApplicationException {
+        return applyCopyOnWrite(patch, source, flags, null);
+    }
+
+    /**
+     * Applies a patch without modifying {@code source} like
+     * {@link #applyCopyOnWrite(JsonNode, JsonNode, EnumSet)}, looking up its paths in {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     */
+    public static JsonNode applyCopyOnWrite(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                            JsonPointerCache cache) throws JsonPatchApplicationException {
+        return CompiledPatch.compile(patch, flags, false, cache).applyCopyOnWrite(source);
+    }
+
+    public static JsonNode applyCopyOnWrite(JsonNode patch, JsonNode source) throws JsonPatchApplicationException {
+        return applyCopyOnWrite(patch, source, CompatibilityFlags.defaults());
+    }
+
     public static void applyInPlace(JsonNode patch, JsonNode source) {
         applyInPlace(patch, source, CompatibilityFlags.defaults());
     }
 
     public static void applyInPlace(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) {
-        InPlaceApplyProcessor processor = new InPlaceApplyProcessor(source, flags);
-        process(patch, processor, flags);
+        applyInPlace(patch, source, flags, null);
+    }
+
+    /**
+     * Applies a patch to {@code source}, modifying it, and looking up its paths in {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     * @see #compile(JsonNode, EnumSet, JsonPointerCache)
+     */
+    public static void applyInPlace(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                    JsonPointerCache cache) {
+        CompiledPatch.compile(patch, flags, false, cache).applyInPlace(source);
+    }
+
+    /**
+     * Applies a patch to a copy of {@code source} like {@link #apply(JsonNode, JsonNode, EnumSet)}, taking
+     * ownership of {@code patch}: the values of its {@code add} and {@code replace} operations are inserted
+     * into the result instead of being copied, which saves copying large values the caller is about to
+     * drop anyway. {@code patch} must not be used afterwards, as the result may share and later modify
+     * its nodes, and must not use the same node as the value of two operations.
+     */
+    public static JsonNode applyConsuming(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) throws JsonPatchApplicationException {
+        return applyConsuming(patch, source, flags, null);
+    }
+
+    /**
+     * Applies a patch like {@link #applyConsuming(JsonNode, JsonNode, EnumSet)}, looking up its paths in
+     * {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     */
+    public static JsonNode applyConsuming(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                          JsonPointerCache cache) throws JsonPatchApplicationException {
+        return CompiledPatch.compileTransferring(patch, flags, cache).apply(source);
+    }
+
+    public static JsonNode applyConsuming(JsonNode patch, JsonNode source) throws JsonPatchApplicationException {
+        return applyConsuming(patch, source, CompatibilityFlags.defaults());
+    }
+
+    /**
+     * Applies a patch to {@code source} in place, taking ownership of {@code patch} as described in
+     * {@link #applyConsuming(JsonNode, JsonNode, EnumSet)}.
+     */
+    public static void applyInPlaceConsuming(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) {
+        applyInPlaceConsuming(patch, source, flags, null);
+    }
+
+    /**
+     * Applies a patch like {@link #applyInPlaceConsuming(JsonNode, JsonNode, EnumSet)}, looking up its
+     * paths in {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     */
+    public static void applyInPlaceConsuming(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                             JsonPointerCache cache) {
+        CompiledPatch.compileTransferring(patch, flags, cache).applyInPlace(source);
+    }
+
+    public static void applyInPlaceConsuming(JsonNode patch, JsonNode source) {
+        applyInPlaceConsuming(patch, source, CompatibilityFlags.defaults());
+    }
+
+    /**
+     * Applies a patch to {@code source} in place, returning the failing operation instead of throwing
+     * if it cannot be applied.
+     *
+     * @throws InvalidJsonPatchException if the patch is malformed
+     * @see CompiledPatch#tryApplyInPlace(JsonNode)
+     */
+    public static JsonPatchResult tryApplyInPlace(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) throws InvalidJsonPatchException {
+        return tryApplyInPlace(patch, source, flags, null);
+    }
+
+    /**
+     * Applies a patch to {@code source} in place like
+     * {@link #tryApplyInPlace(JsonNode, JsonNode, EnumSet)}, looking up its paths in {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     */
+    public static JsonPatchResult tryApplyInPlace(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                                  JsonPointerCache cache) throws InvalidJsonPatchException {
+        return CompiledPatch.compile(patch, flags, false, cache).tryApplyInPlace(source);
+    }
+
+    public static JsonPatchResult tryApplyInPlace(JsonNode patch, JsonNode source) throws InvalidJsonPatchException {
+        return tryApplyInPlace(patch, source, CompatibilityFlags.defaults());
+    }
+
+    /**
+     * Applies a patch to {@code source} in place, reverting all modifications if any operation fails.
+     *
+     * @see CompiledPatch#applyInPlaceAtomically(JsonNode)
+     */
+    public static void applyInPlaceAtomically(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags) {
+        applyInPlaceAtomically(patch, source, flags, null);
+    }
+
+    /**
+     * Applies a patch to {@code source} in place like
+     * {@link #applyInPlaceAtomically(JsonNode, JsonNode, EnumSet)}, looking up its paths in {@code cache}.
+     *
+     * @param cache the cache to look up paths in, or {@code null} to parse every path
+     */
+    public static void applyInPlaceAtomically(JsonNode patch, JsonNode source, EnumSet<CompatibilityFlags> flags,
+                                              JsonPointerCache cache) {
+        CompiledPatch.compile(patch, flags, false, cache).applyInPlaceAtomically(source);
+    }
+
+    public static void applyInPlaceAtomically(JsonNode patch, JsonNode source) {
+        applyInPlaceAtomically(patch, source, CompatibilityFlags.defaults());
     }
 }
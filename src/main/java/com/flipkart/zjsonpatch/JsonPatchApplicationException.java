@@ -23,11 +23,72 @@ package com.flipkart.zjsonpatch;
 public class JsonPatchApplicationException extends RuntimeException {
     Operation operation;
     JsonPointer path;
+    // Position of the failing operation in the patch, once known
+    int index = -1;
+    // Set for failures raised while a patch is applied, whose message is rendered on demand
+    private final Failure failure;
+    private final Object detail;
+    private final Object found;
+    private String message;
 
     public JsonPatchApplicationException(String message, Operation operation, JsonPointer path) {
-        super(message);
+        this(message, operation, path, true);
+    }
+
+    /**
+     * @param writableStackTrace {@code false} for the failures raised while a patch is applied, which are
+     *                           expected outcomes; filling in their stack trace would dominate their cost
+     */
+    JsonPatchApplicationException(String message, Operation operation, JsonPointer path, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
         this.operation = operation;
         this.path = path;
+        this.failure = null;
+        this.detail = null;
+        this.found = null;
+    }
+
+    /**
+     * Creates a failure raised while a patch is applied, without a stack trace and with a message that is
+     * only rendered if asked for.
+     *
+     * @see Failure#message(Object, Object)
+     */
+    JsonPatchApplicationException(Failure failure, Object detail, Object found, Operation operation, JsonPointer path) {
+        super(null, null, false, false);
+        this.operation = operation;
+        this.path = path;
+        this.failure = failure;
+        this.detail = detail;
+        this.found = found;
+    }
+
+    /** Converts a failure to resolve a path of the operation, keeping its message unrendered. */
+    static JsonPatchApplicationException of(JsonPointerEvaluationException e, Operation operation) {
+        if (e.failure != null)
+            return new JsonPatchApplicationException(e.failure, e.detail, null, operation, e.getPath());
+        return new JsonPatchApplicationException(e.getMessage(), operation, e.getPath(), false);
+    }
+
+    @Override
+    public String getMessage() {
+        if (failure == null)
+            return super.getMessage();
+        if (message == null)
+            message = failure.message(detail, found);
+        return message;
+    }
+
+    /**
+     * Returns this exception if it has a stack trace, or else an equivalent one with the stack trace
+     * of the caller, for rethrowing from the public API.
+     */
+    JsonPatchApplicationException withStackTrace() {
+        if (getStackTrace().length != 0)
+            return this;
+        JsonPatchApplicationException e = new JsonPatchApplicationException(getMessage(), operation, path);
+        e.index = index;
+        return e;
     }
 
     @Override
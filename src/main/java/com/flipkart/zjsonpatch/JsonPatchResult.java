@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The outcome of applying a patch with one of the {@code tryApply} methods: either the patched
+ * document, or a description of the operation that could not be applied.
+ *
+ * @see CompiledPatch#tryApply(JsonNode)
+ * @see CompiledPatch#tryApplyInPlace(JsonNode)
+ */
+public final class JsonPatchResult {
+
+    private final JsonNode target;
+    private final int index;
+    private final Operation operation;
+    private final JsonPointer path;
+    // Renders the reason on demand; tryApply callers often only check for success
+    private final JsonPatchApplicationException failure;
+
+    private JsonPatchResult(JsonNode target, int index, Operation operation, JsonPointer path,
+                            JsonPatchApplicationException failure) {
+        this.target = target;
+        this.index = index;
+        this.operation = operation;
+        this.path = path;
+        this.failure = failure;
+    }
+
+    static JsonPatchResult applied(JsonNode target) {
+        return new JsonPatchResult(target, -1, null, null, null);
+    }
+
+    static JsonPatchResult failed(JsonPatchApplicationException e, Operation operation) {
+        return new JsonPatchResult(null, e.index, operation, e.path, e);
+    }
+
+    /** Returns whether every operation of the patch was applied. */
+    public boolean isSuccess() {
+        return index < 0;
+    }
+
+    /**
+     * Returns the patched document, or {@code null} if the patch failed.
+     */
+    public JsonNode getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the position of the failing operation in the patch, or {@code -1} on success.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /** Returns the name of the failing operation, such as {@code "test"}, or {@code null} on success. */
+    public String getOperation() {
+        return operation != null ? operation.rfcName() : null;
+    }
+
+    /**
+     * Returns the path at which the failing operation could not be applied, which may be a prefix of
+     * the operation's path, or {@code null} on success.
+     */
+    public String getPath() {
+        return path != null ? path.toString() : null;
+    }
+
+    /**
+     * Returns why the failing operation could not be applied, or {@code null} on success. The message is
+     * built on the first call.
+     */
+    public String getReason() {
+        return failure != null ? failure.getMessage() : null;
+    }
+
+    @Override
+    public String toString() {
+        if (isSuccess())
+            return "[Success]";
+        StringBuilder sb = new StringBuilder();
+        sb.append("[Failed ").append(operation).append(" Operation #").append(index).append("] ").append(getReason());
+        if (path != null) sb.append(" at ").append(path.isRoot() ? "root" : path);
+        return sb.toString();
+    }
+}
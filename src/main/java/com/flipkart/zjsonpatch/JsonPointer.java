@@ -6,8 +6,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Implements RFC 6901 (JSON Pointer)
@@ -36,16 +34,34 @@ import java.util.regex.Pattern;
  *
  * <p>Instances of {@link JsonPointer} and its constituent {@link RefToken}s are <b>immutable</b>.
  *
+ * <p>A pointer built by {@link #append(String) appending} a token refers to the pointer it extends
+ * rather than copying its tokens, so building the paths of a document walk costs constant time per
+ * step. The tokens are only collected into an array, once, when they are accessed by position.
+ *
  * @since 0.4.8
  */
 class JsonPointer {
-    private final RefToken[] tokens;
+    // Set up front, or else collected from parent and last when first needed
+    private volatile RefToken[] tokens;
+    // Pointer that this one extends by last, unless the tokens were set up front
+    private final JsonPointer parent;
+    private final RefToken last;
+    private final int size;
 
     /** A JSON pointer representing the root node of a JSON document */
     public final static JsonPointer ROOT = new JsonPointer(new RefToken[] {});
 
     private JsonPointer(RefToken[] tokens) {
         this.tokens = tokens;
+        this.parent = null;
+        this.last = tokens.length == 0 ? null : tokens[tokens.length - 1];
+        this.size = tokens.length;
+    }
+
+    private JsonPointer(JsonPointer parent, RefToken last) {
+        this.parent = parent;
+        this.last = last;
+        this.size = parent.size + 1;
     }
 
     /**
@@ -54,7 +70,26 @@ class JsonPointer {
      * @param tokens The list of reference tokens from which to construct the new pointer. This list is not modified.
      */
     public JsonPointer(List<RefToken> tokens) {
-        this.tokens = tokens.toArray(new RefToken[0]);
+        this(tokens.toArray(new RefToken[0]));
+    }
+
+    private RefToken[] tokens() {
+        RefToken[] result = tokens;
+        if (result == null) {
+            result = new RefToken[size];
+            JsonPointer pointer = this;
+            for (int i = size - 1; i >= 0; i--) {
+                RefToken[] flat = pointer.tokens;
+                if (flat != null) {
+                    System.arraycopy(flat, 0, result, 0, i + 1);
+                    break;
+                }
+                result[i] = pointer.last;
+                pointer = pointer.parent;
+            }
+            tokens = result;
+        }
+        return result;
     }
 
     /**
@@ -113,7 +148,7 @@ class JsonPointer {
      * @return {@code true} if this pointer represents the root node, {@code false} otherwise.
      */
     public boolean isRoot() {
-        return tokens.length == 0;
+        return size == 0;
     }
 
     /**
@@ -123,9 +158,7 @@ class JsonPointer {
      * @return The new {@link JsonPointer} instance.
      */
     JsonPointer append(String field) {
-        RefToken[] newTokens = Arrays.copyOf(tokens, tokens.length + 1);
-        newTokens[tokens.length] = new RefToken(field);
-        return new JsonPointer(newTokens);
+        return new JsonPointer(this, new RefToken(field));
     }
 
     /**
@@ -135,12 +168,54 @@ class JsonPointer {
      * @return The new {@link JsonPointer} instance.
      */
     JsonPointer append(int index) {
-        return append(Integer.toString(index));
+        return new JsonPointer(this, new RefToken(index));
     }
 
     /** Returns the number of reference tokens comprising this instance. */
     int size() {
-        return tokens.length;
+        return size;
+    }
+
+    /**
+     * Indicates whether this pointer equals {@code prefix} or references a node below it.
+     */
+    boolean startsWith(JsonPointer prefix) {
+        if (prefix.size > size)
+            return false;
+        RefToken[] tokens = tokens();
+        RefToken[] prefixTokens = prefix.tokens();
+        for (int i = 0; i < prefixTokens.length; i++) {
+            if (!tokens[i].equals(prefixTokens[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether this pointer and {@code other} reference nodes of the same parent.
+     */
+    boolean hasSameParent(JsonPointer other) {
+        if (size != other.size || size == 0)
+            return false;
+        RefToken[] tokens = tokens();
+        RefToken[] otherTokens = other.tokens();
+        for (int i = tokens.length - 2; i >= 0; i--) {
+            if (!tokens[i].equals(otherTokens[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates a new JSON pointer by replacing the first {@code prefixSize} tokens of this instance
+     * with those of {@code replacement}.
+     */
+    JsonPointer replacePrefix(int prefixSize, JsonPointer replacement) {
+        RefToken[] tokens = tokens();
+        RefToken[] newTokens = new RefToken[replacement.size + tokens.length - prefixSize];
+        System.arraycopy(replacement.tokens(), 0, newTokens, 0, replacement.size);
+        System.arraycopy(tokens, prefixSize, newTokens, replacement.size, tokens.length - prefixSize);
+        return new JsonPointer(newTokens);
     }
 
     /**
@@ -152,7 +227,7 @@ class JsonPointer {
      */
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (RefToken token : tokens) {
+        for (RefToken token : tokens()) {
             sb.append('/');
             sb.append(token);
         }
@@ -165,7 +240,7 @@ class JsonPointer {
      * @return A list of {@link RefToken}s. Modifications to this list do not affect this instance.
      */
     public List<RefToken> decompose() {
-        return Arrays.asList(tokens.clone());
+        return Arrays.asList(tokens().clone());
     }
 
     /**
@@ -176,8 +251,8 @@ class JsonPointer {
      * @throws IndexOutOfBoundsException The specified index is illegal.
      */
     public RefToken get(int index) throws IndexOutOfBoundsException {
-        if (index < 0 || index >= tokens.length) throw new IndexOutOfBoundsException("Illegal index: " + index);
-        return tokens[index];
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Illegal index: " + index);
+        return tokens()[index];
     }
 
     /**
@@ -188,7 +263,7 @@ class JsonPointer {
      */
     public RefToken last() {
         if (isRoot()) throw new IllegalStateException("Root pointers contain no reference tokens");
-        return tokens[tokens.length - 1];
+        return last;
     }
 
     /**
@@ -199,13 +274,15 @@ class JsonPointer {
      * @return A {@link JsonPointer} to the parent node.
      */
     public JsonPointer getParent() {
-        return isRoot() ? this : new JsonPointer(Arrays.copyOf(tokens, tokens.length - 1));
+        if (isRoot()) return this;
+        return parent != null ? parent : new JsonPointer(Arrays.copyOf(tokens(), size - 1));
     }
 
-    private void error(int atToken, String message, JsonNode document) throws JsonPointerEvaluationException {
+    private void error(int atToken, Failure failure, Object detail, JsonNode document) throws JsonPointerEvaluationException {
         throw new JsonPointerEvaluationException(
-                message,
-                new JsonPointer(Arrays.copyOf(tokens, atToken)),
+                failure,
+                detail,
+                new JsonPointer(Arrays.copyOf(tokens(), atToken)),
                 document);
     }
 
@@ -220,25 +297,38 @@ class JsonPointer {
      * @throws JsonPointerEvaluationException The pointer could not be evaluated.
      */
     public JsonNode evaluate(final JsonNode document) throws JsonPointerEvaluationException {
-        JsonNode current = document;
+        return evaluate(document, 0, size, null);
+    }
 
-        for (int idx = 0; idx < tokens.length; ++idx) {
+    /**
+     * Resolves the first {@code size} tokens of this pointer against {@code document}, resuming from
+     * {@code nodes[from]}, the node already resolved for the first {@code from} tokens. If {@code nodes}
+     * is given, the node resolved for the first {@code i} tokens is stored at {@code nodes[i]}. Failures
+     * are reported exactly as {@link #evaluate(JsonNode)} reports them.
+     */
+    JsonNode evaluate(final JsonNode document, int from, int size, JsonNode[] nodes) throws JsonPointerEvaluationException {
+        JsonNode current = from == 0 ? document : nodes[from];
+        RefToken[] tokens = tokens();
+
+        for (int idx = from; idx < size; ++idx) {
             final RefToken token = tokens[idx];
 
             if (current.isArray()) {
                 if (!token.isArrayIndex())
-                    error(idx, "Can't reference field \"" + token.getField() + "\" on array", document);
+                    error(idx, Failure.FIELD_ON_ARRAY, token.getField(), document);
                 if (token.getIndex() == LAST_INDEX || token.getIndex() >= current.size())
-                    error(idx, "Array index " + token.toString() + " is out of bounds", document);
+                    error(idx, Failure.UNRESOLVED_INDEX, token, document);
                 current = current.get(token.getIndex());
             }
             else if (current.isObject()) {
                 if (!current.has(token.getField()))
-                    error(idx,"Missing field \"" + token.getField() + "\"", document);
+                    error(idx, Failure.MISSING_FIELD, token.getField(), document);
                 current = current.get(token.getField());
             }
             else
-                error(idx, "Can't reference past scalar value", document);
+                error(idx, Failure.PAST_SCALAR, null, document);
+            if (nodes != null)
+                nodes[idx + 1] = current;
         }
 
         return current;
@@ -252,43 +342,113 @@ class JsonPointer {
         JsonPointer that = (JsonPointer) o;
 
         // Probably incorrect - comparing Object[] arrays with Arrays.equals
-        return Arrays.equals(tokens, that.tokens);
+        return size == that.size && Arrays.equals(tokens(), that.tokens());
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(tokens);
+        return Arrays.hashCode(tokens());
     }
 
     /** Represents a single JSON Pointer reference token. */
     static class RefToken {
+        // Rendered when first needed for tokens created from an index
         private String decodedToken;
-        transient private Integer index = null;
+        // RFC 6901 form, rendered when first needed
+        private String encodedToken;
+        // The array index the token denotes, NOT_INDEX if none
+        private final int index;
+
+        private static final int NOT_INDEX = -1;
 
         public RefToken(String decodedToken) {
             if (decodedToken == null) throw new IllegalArgumentException("Token can't be null");
             this.decodedToken = decodedToken;
+            this.index = parseIndex(decodedToken);
         }
 
-        private static final Pattern DECODED_TILDA_PATTERN = Pattern.compile("~0");
-        private static final Pattern DECODED_SLASH_PATTERN = Pattern.compile("~1");
-
-        private static String decodePath(Object object) {
-            String path = object.toString(); // see http://tools.ietf.org/html/rfc6901#section-4
-            path = DECODED_SLASH_PATTERN.matcher(path).replaceAll("/");
-            return DECODED_TILDA_PATTERN.matcher(path).replaceAll("~");
+        /**
+         * Creates the token of an array index, or {@link #LAST_INDEX}.
+         *
+         * @throws IllegalArgumentException if {@code index} is negative and not {@link #LAST_INDEX}
+         */
+        RefToken(int index) {
+            if (index < 0 && index != LAST_INDEX)
+                throw new IllegalArgumentException("Array index can't be negative: " + index);
+            this.index = index;
         }
 
-        private static final Pattern ENCODED_TILDA_PATTERN = Pattern.compile("~");
-        private static final Pattern ENCODED_SLASH_PATTERN = Pattern.compile("/");
+        // see http://tools.ietf.org/html/rfc6901#section-4
+        private static String decodePath(String path) {
+            int escape = path.indexOf('~');
+            if (escape < 0)
+                return path;
+
+            StringBuilder sb = new StringBuilder(path.length());
+            sb.append(path, 0, escape);
+            for (int i = escape; i < path.length(); i++) {
+                char c = path.charAt(i);
+                if (c == '~' && i + 1 < path.length()) {
+                    char next = path.charAt(i + 1);
+                    if (next == '0' || next == '1') {
+                        sb.append(next == '0' ? '~' : '/');
+                        i++;
+                        continue;
+                    }
+                }
+                sb.append(c);
+            }
+            return sb.toString();
+        }
 
-        private static String encodePath(Object object) {
-            String path = object.toString(); // see http://tools.ietf.org/html/rfc6901#section-4
-            path = ENCODED_TILDA_PATTERN.matcher(path).replaceAll("~0");
-            return ENCODED_SLASH_PATTERN.matcher(path).replaceAll("~1");
+        // see http://tools.ietf.org/html/rfc6901#section-4
+        private static String encodePath(String path) {
+            int i = 0;
+            while (i < path.length() && path.charAt(i) != '~' && path.charAt(i) != '/')
+                i++;
+            if (i == path.length())
+                return path;
+
+            StringBuilder sb = new StringBuilder(path.length() + 4);
+            sb.append(path, 0, i);
+            for (; i < path.length(); i++) {
+                char c = path.charAt(i);
+                if (c == '~')
+                    sb.append("~0");
+                else if (c == '/')
+                    sb.append("~1");
+                else
+                    sb.append(c);
+            }
+            return sb.toString();
         }
 
-        private static final Pattern VALID_ARRAY_IND = Pattern.compile("-|0|(?:[1-9][0-9]*)");
+        /**
+         * Parses an array index: {@code -}, {@code 0}, or digits without a leading zero that fit an int.
+         */
+        private static int parseIndex(String token) {
+            int length = token.length();
+            if (length == 0 || length > 10)
+                return NOT_INDEX;
+            char first = token.charAt(0);
+            if (length == 1) {
+                if (first == '-')
+                    return LAST_INDEX;
+                return first >= '0' && first <= '9' ? first - '0' : NOT_INDEX;
+            }
+            if (first < '1' || first > '9')
+                return NOT_INDEX;
+
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                char c = token.charAt(i);
+                if (c < '0' || c > '9')
+                    return NOT_INDEX;
+                value = value * 10 + (c - '0');
+            }
+            // Too large to address an array element, e.g. a numeric object key
+            return value > Integer.MAX_VALUE ? NOT_INDEX : (int) value;
+        }
 
         public static RefToken parse(String rawToken) {
             if (rawToken == null) throw new IllegalArgumentException("Token can't be null");
@@ -296,13 +456,7 @@ class JsonPointer {
         }
 
         public boolean isArrayIndex() {
-            if (index != null) return true;
-            Matcher matcher = VALID_ARRAY_IND.matcher(decodedToken);
-            if (matcher.matches()) {
-                index = matcher.group().equals("-") ? LAST_INDEX : Integer.parseInt(matcher.group());
-                return true;
-            }
-            return false;
+            return index != NOT_INDEX;
         }
 
         public int getIndex() {
@@ -311,12 +465,22 @@ class JsonPointer {
         }
 
         public String getField() {
-            return decodedToken;
+            String field = decodedToken;
+            if (field == null) {
+                field = index == LAST_INDEX ? "-" : Integer.toString(index);
+                decodedToken = field;
+            }
+            return field;
         }
 
         @Override
         public String toString() {
-            return encodePath(decodedToken);
+            String encoded = encodedToken;
+            if (encoded == null) {
+                encoded = isArrayIndex() ? getField() : encodePath(decodedToken);
+                encodedToken = encoded;
+            }
+            return encoded;
         }
 
         @Override
@@ -326,12 +490,15 @@ class JsonPointer {
 
             RefToken refToken = (RefToken) o;
 
+            // Index tokens are only ever spelled one way
+            if (isArrayIndex() || refToken.isArrayIndex())
+                return index == refToken.index;
             return decodedToken.equals(refToken.decodedToken);
         }
 
         @Override
         public int hashCode() {
-            return decodedToken.hashCode();
+            return isArrayIndex() ? index : decodedToken.hashCode();
         }
     }
 
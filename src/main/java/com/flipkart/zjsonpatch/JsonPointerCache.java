@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache of parsed JSON pointers, keyed by their string form. Parsed pointers are
+ * immutable, so one instance can serve every patch that uses the same path.
+ *
+ * <pre>
+ *      JsonPointerCache cache = new JsonPointerCache(10000);
+ *      CompiledPatch patch = JsonPatch.compile(patchNode, CompatibilityFlags.defaults(), cache);
+ *      ...
+ *      double hitRate = (double) cache.hitCount() / (cache.hitCount() + cache.missCount());
+ * </pre>
+ *
+ * <p>Instances are thread safe. The entries are spread over independently locked segments, each
+ * evicting its least recently used entry when full, so eviction is close to but not exactly LRU
+ * across the whole cache.
+ *
+ * @see JsonPatch#compile(JsonNode, java.util.EnumSet, JsonPointerCache)
+ */
+public final class JsonPointerCache {
+
+    // Caches smaller than this use a single segment and are exactly LRU
+    private static final int MIN_SEGMENTED_SIZE = 256;
+    private static final int SEGMENTS = 16;
+
+    private final int maximumSize;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maximumSize the maximum number of pointers held
+     * @throws IllegalArgumentException if {@code maximumSize} is not positive
+     */
+    public JsonPointerCache(int maximumSize) {
+        if (maximumSize < 1)
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        this.maximumSize = maximumSize;
+        int count = maximumSize < MIN_SEGMENTED_SIZE ? 1 : SEGMENTS;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // Split the capacity evenly, the first segments taking the remainder
+            segments[i] = new Segment(maximumSize / count + (i < maximumSize % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Returns the parsed form of {@code path}, parsing it on a miss.
+     *
+     * @throws IllegalArgumentException if {@code path} is not a valid JSON pointer; such paths are not cached
+     */
+    JsonPointer parse(String path) throws IllegalArgumentException {
+        Segment segment = segments[segments.length == 1 ? 0 : spread(path.hashCode()) & (segments.length - 1)];
+        JsonPointer pointer;
+        synchronized (segment) {
+            pointer = segment.get(path);
+        }
+        if (pointer != null) {
+            hits.increment();
+            return pointer;
+        }
+
+        misses.increment();
+        pointer = JsonPointer.parse(path);
+        synchronized (segment) {
+            segment.put(path, pointer);
+        }
+        return pointer;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Returns the number of lookups that found their pointer in the cache */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /** Returns the number of lookups that had to parse their pointer */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /** Returns the number of pointers currently held */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /** Removes all pointers; the counters are kept */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /** An access-ordered map dropping its least recently used entry once over capacity */
+    private static final class Segment extends LinkedHashMap<String, JsonPointer> {
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JsonPointer> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -5,11 +5,35 @@ import com.fasterxml.jackson.databind.JsonNode;
 public class JsonPointerEvaluationException extends Exception {
     private final JsonPointer path;
     private final JsonNode target;
+    // Set for failures raised while a patch is applied, whose message is rendered on demand
+    final Failure failure;
+    final Object detail;
+    private String message;
 
     public JsonPointerEvaluationException(String message, JsonPointer path, JsonNode target) {
         super(message);
         this.path = path;
         this.target = target;
+        this.failure = null;
+        this.detail = null;
+    }
+
+    // Failing to resolve a path is an expected outcome when applying patches, so no stack trace is captured
+    JsonPointerEvaluationException(Failure failure, Object detail, JsonPointer path, JsonNode target) {
+        super(null, null, false, false);
+        this.path = path;
+        this.target = target;
+        this.failure = failure;
+        this.detail = detail;
+    }
+
+    @Override
+    public String getMessage() {
+        if (failure == null)
+            return super.getMessage();
+        if (message == null)
+            message = failure.message(detail, null);
+        return message;
     }
 
     public JsonPointer getPath() {
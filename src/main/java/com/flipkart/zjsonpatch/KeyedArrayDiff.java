@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Pairs the elements of two arrays treated as sets ({@link DiffFlags#TREAT_ARRAYS_AS_SETS}) by their
+ * id field. The target array is indexed in an open addressing table keyed by id, and the source array
+ * is probed against it in a single pass, so neither array is copied and no index outlives the call.
+ */
+final class KeyedArrayDiff {
+
+    static final int UNMATCHED = -1;
+
+    private static final String[] ID_FIELDS = new String[]{"id", "_id", "uuid"};
+
+    private KeyedArrayDiff() {}
+
+    /**
+     * Returns the id field the first element of {@code source} carries, or {@code null} if the array
+     * is empty or its first element has none.
+     */
+    static String idField(JsonNode source) {
+        JsonNode first = source.get(0);
+        if (first == null)
+            return null;
+        for (String field : ID_FIELDS) {
+            if (first.has(field))
+                return field;
+        }
+        return null;
+    }
+
+    /**
+     * Returns, for each element of {@code source}, the index of the element of {@code target} with the
+     * same id, or {@link #UNMATCHED}. Returns {@code null} if the elements can't be keyed: some element
+     * is not an object carrying {@code idField}, or an id occurs twice on the same side.
+     */
+    static int[] join(JsonNode source, JsonNode target, String idField) {
+        int targetSize = target.size();
+        String[] targetIds = new String[targetSize];
+        int mask = tableSize(targetSize) - 1;
+        int[] table = new int[mask + 1]; // target index + 1, 0 for an empty slot
+        for (int j = 0; j < targetSize; j++) {
+            String id = idOf(target.get(j), idField);
+            if (id == null)
+                return null;
+            int slot = spread(id.hashCode()) & mask;
+            while (table[slot] != 0) {
+                if (targetIds[table[slot] - 1].equals(id))
+                    return null;
+                slot = (slot + 1) & mask;
+            }
+            targetIds[j] = id;
+            table[slot] = j + 1;
+        }
+
+        int sourceSize = source.size();
+        int[] matches = new int[sourceSize];
+        boolean[] taken = new boolean[targetSize];
+        for (int i = 0; i < sourceSize; i++) {
+            String id = idOf(source.get(i), idField);
+            if (id == null)
+                return null;
+            int match = UNMATCHED;
+            int slot = spread(id.hashCode()) & mask;
+            while (table[slot] != 0) {
+                int j = table[slot] - 1;
+                if (targetIds[j].equals(id)) {
+                    if (taken[j])
+                        return null;
+                    taken[j] = true;
+                    match = j;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            matches[i] = match;
+        }
+        return matches;
+    }
+
+    private static String idOf(JsonNode element, String idField) {
+        JsonNode id = element.isObject() ? element.get(idField) : null;
+        return id != null ? id.asText() : null;
+    }
+
+    /** The smallest power of two that keeps the table at most half full. */
+    private static int tableSize(int entries) {
+        int size = 2;
+        while (size < 2 * entries)
+            size <<= 1;
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the longest common subsequence of two JSON arrays using the linear space
+ * refinement of Myers' "An O(ND) Difference Algorithm and Its Variations".
+ *
+ * <p>The arrays are recursively split on their middle snake (Hirschberg style), so the
+ * running time is O((N+M)·D) and the only working memory besides the result are a few
+ * int vectors of at most N+M+2 entries, where D is the size of the minimal edit script.
+ *
+ * <p>Before the search runs, the identical leading and trailing runs of both arrays are
+ * stripped in linear time, so appends, truncations and localized edits never reach the
+ * quadratic worst case. Elements of the remaining middle section are reduced to their
+ * {@link NodeDigests structural digests} up front, which rejects unequal pairs without a
+ * deep {@link JsonNode#equals} call.
+ *
+ * <p>Instances are not thread safe, but may be reused for subsequent computations.
+ */
+final class MyersLcs {
+
+    private static final int[] EMPTY = new int[0];
+    private static final long[] NO_DIGESTS = new long[0];
+
+    /** Working buffers that grew past this many entries are dropped by {@link #trim()} */
+    private static final int MAX_RETAINED_LENGTH = 1 << 16;
+
+    private final NodeDigests digests;
+    private JsonNode first;
+    private JsonNode second;
+    private int[] vDown = EMPTY;
+    private int[] vUp = EMPTY;
+    private long[] firstDigests = NO_DIGESTS;
+    private long[] secondDigests = NO_DIGESTS;
+
+    MyersLcs(NodeDigests digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * Computes the longest common subsequence of two array nodes.
+     *
+     * @param first  the source array
+     * @param second the target array
+     * @return the elements of {@code first} forming the longest common subsequence, in order
+     */
+    List<JsonNode> longestCommonSubsequence(JsonNode first, JsonNode second) {
+        this.first = first;
+        this.second = second;
+        try {
+            int end1 = first.size();
+            int end2 = second.size();
+            List<JsonNode> lcs = new ArrayList<JsonNode>();
+
+            // Common prefix
+            int start = 0;
+            while (start < end1 && start < end2 && digests.equal(first.get(start), second.get(start)))
+                lcs.add(first.get(start++));
+
+            // Common suffix
+            int suffix = 0;
+            while (start < end1 - suffix && start < end2 - suffix &&
+                    digests.equal(first.get(end1 - suffix - 1), second.get(end2 - suffix - 1)))
+                suffix++;
+            end1 -= suffix;
+            end2 -= suffix;
+
+            if (start < end1 && start < end2) {
+                prepare(start, end1, end2);
+                collect(start, end1, start, end2, lcs);
+            }
+
+            for (int i = end1; i < end1 + suffix; i++)
+                lcs.add(first.get(i));
+            return lcs;
+        } finally {
+            this.first = null;
+            this.second = null;
+        }
+    }
+
+    /**
+     * Drops the working buffers sized for unusually large arrays, so that a reused instance doesn't
+     * hold on to them; they are reallocated when needed again.
+     */
+    void trim() {
+        if (vDown.length > MAX_RETAINED_LENGTH) {
+            vDown = EMPTY;
+            vUp = EMPTY;
+        }
+        if (firstDigests.length > MAX_RETAINED_LENGTH)
+            firstDigests = NO_DIGESTS;
+        if (secondDigests.length > MAX_RETAINED_LENGTH)
+            secondDigests = NO_DIGESTS;
+    }
+
+    private void prepare(int start, int end1, int end2) {
+        int size = (end1 - start) + (end2 - start) + 2;
+        if (vDown.length < size) {
+            vDown = new int[size];
+            vUp = new int[size];
+        }
+        if (firstDigests.length < end1)
+            firstDigests = new long[end1];
+        if (secondDigests.length < end2)
+            secondDigests = new long[end2];
+        for (int i = start; i < end1; i++)
+            firstDigests[i] = digests.digest(first.get(i));
+        for (int i = start; i < end2; i++)
+            secondDigests[i] = digests.digest(second.get(i));
+    }
+
+    private boolean equal(int x, int y) {
+        return firstDigests[x] == secondDigests[y] && first.get(x).equals(second.get(y));
+    }
+
+    private void collect(int start1, int end1, int start2, int end2, List<JsonNode> lcs) {
+        long middle = middleSnake(start1, end1, start2, end2);
+
+        if (middle == NO_SNAKE) {
+            // One side is empty, nothing in common
+            return;
+        }
+
+        int snakeStart = snakeStart(middle);
+        int diag = snakeDiag(middle);
+        int snakeEnd = snakeStart;
+        while (snakeEnd < end1 && snakeEnd - diag < end2 && equal(snakeEnd, snakeEnd - diag))
+            ++snakeEnd;
+
+        if ((snakeStart == end1 && diag == end1 - end2) || (snakeEnd == start1 && diag == start1 - start2)) {
+            // The snake sits on a corner and would not split the range; fall back to a direct walk
+            collectDirect(start1, end1, start2, end2, lcs);
+            return;
+        }
+
+        collect(start1, snakeStart, start2, snakeStart - diag, lcs);
+        for (int i = snakeStart; i < snakeEnd; ++i)
+            lcs.add(first.get(i));
+        collect(snakeEnd, end1, snakeEnd - diag, end2, lcs);
+    }
+
+    private void collectDirect(int start1, int end1, int start2, int end2, List<JsonNode> lcs) {
+        int i = start1;
+        int j = start2;
+        while (i < end1 || j < end2) {
+            if (i < end1 && j < end2 && equal(i, j)) {
+                lcs.add(first.get(i));
+                ++i;
+                ++j;
+            } else if (end1 - start1 > end2 - start2) {
+                ++i;
+            } else {
+                ++j;
+            }
+        }
+    }
+
+    private static final long NO_SNAKE = Long.MIN_VALUE;
+
+    private static long snake(int start, int diag) {
+        return ((long) start << 32) | (diag & 0xFFFFFFFFL);
+    }
+
+    private static int snakeStart(long snake) {
+        return (int) (snake >>> 32);
+    }
+
+    private static int snakeDiag(long snake) {
+        return (int) snake;
+    }
+
+    /**
+     * Finds the middle snake of the edit graph spanning the given ranges, searching forward
+     * from the top-left corner and backward from the bottom-right corner simultaneously.
+     *
+     * @return the start and diagonal of the middle snake packed into a long, or {@link #NO_SNAKE}
+     * if either range is empty
+     */
+    private long middleSnake(int start1, int end1, int start2, int end2) {
+        final int m = end1 - start1;
+        final int n = end2 - start2;
+        if (m == 0 || n == 0)
+            return NO_SNAKE;
+
+        final int delta = m - n;
+        final int sum = n + m;
+        final int offset = (sum % 2 == 0 ? sum : sum + 1) / 2;
+        vDown[1 + offset] = start1;
+        vUp[1 + offset] = end1 + 1;
+
+        for (int d = 0; d <= offset; ++d) {
+            // Forward search
+            for (int k = -d; k <= d; k += 2) {
+                final int i = k + offset;
+                if (k == -d || k != d && vDown[i - 1] < vDown[i + 1])
+                    vDown[i] = vDown[i + 1];
+                else
+                    vDown[i] = vDown[i - 1] + 1;
+
+                int x = vDown[i];
+                int y = x - start1 + start2 - k;
+                while (x < end1 && y < end2 && equal(x, y)) {
+                    vDown[i] = ++x;
+                    ++y;
+                }
+                if (delta % 2 != 0 && delta - d <= k && k <= delta + d && vUp[i - delta] <= vDown[i])
+                    return snake(vUp[i - delta], k + start1 - start2);
+            }
+
+            // Backward search
+            for (int k = delta - d; k <= delta + d; k += 2) {
+                final int i = k + offset - delta;
+                if (k == delta - d || k != delta + d && vUp[i + 1] <= vUp[i - 1])
+                    vUp[i] = vUp[i + 1] - 1;
+                else
+                    vUp[i] = vUp[i - 1];
+
+                int x = vUp[i] - 1;
+                int y = x - start1 + start2 - k;
+                while (x >= start1 && y >= start2 && equal(x, y)) {
+                    vUp[i] = x--;
+                    y--;
+                }
+                if (delta % 2 == 0 && -d <= k && k <= d && vUp[i] <= vDown[i + delta])
+                    return snake(vUp[i], k + start1 - start2);
+            }
+        }
+
+        throw new IllegalStateException("Middle snake not found in [" + start1 + ", " + end1 + ") x [" + start2 + ", " + end2 + ")");
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A cache of Merkle-style structural digests for the container nodes of the documents
+ * being compared.
+ *
+ * <p>Each container is hashed once, bottom-up, into a 64-bit digest that is consistent with
+ * {@link JsonNode#equals}: equal nodes always have equal digests (object digests do not depend
+ * on field order). The subtree size (number of nodes) is recorded alongside. Equality checks
+ * compare digests first and only fall back to a deep {@code equals} when they match, so a
+ * subtree is deep-compared at most once no matter how many recursion levels look at it.
+ *
+ * <p>Caching can be turned off for streaming diffs, which must not hold on to the document: digests
+ * are then recomputed on each call and equality checks use {@link JsonNode#equals} directly.
+ *
+ * <p>Nodes are tracked by identity, so the documents must not be mutated while the cache is
+ * in use. Instances are not thread safe, but a cache may be layered over a parent cache that
+ * several threads read while nobody writes to it.
+ */
+final class NodeDigests {
+
+    private static final long ARRAY_SEED = 0x6A09E667F3BCC909L;
+    private static final long OBJECT_SEED = 0xBB67AE8584CAA73BL;
+    private static final long PRIME = 0x100000001B3L;
+
+    /** Caches that grew past this many entries are dropped rather than cleared for reuse */
+    private static final int MAX_RETAINED_ENTRIES = 1 << 16;
+
+    private final NodeDigests parent;
+    private IdentityHashMap<JsonNode, Entry> cache = new IdentityHashMap<JsonNode, Entry>();
+    private boolean caching = true;
+
+    NodeDigests() {
+        this(null);
+    }
+
+    /**
+     * Creates a cache that looks up digests in {@code parent} before computing them. Newly computed
+     * digests are only stored in this cache; {@code parent} must not change while this one is in use.
+     */
+    NodeDigests(NodeDigests parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the structural digest of a node, computing (and caching) it for containers.
+     */
+    long digest(JsonNode node) {
+        return node.isContainerNode() ? entry(node).digest : scalarDigest(node);
+    }
+
+    /**
+     * Returns the number of nodes in the subtree rooted at the given node, itself included.
+     */
+    int size(JsonNode node) {
+        return node.isContainerNode() ? entry(node).size : 1;
+    }
+
+    /**
+     * Null-safe equality check equivalent to {@link JsonNode#equals}, short-circuited by digests.
+     */
+    boolean equal(JsonNode first, JsonNode second) {
+        if (first == second)
+            return true;
+        if (first == null || second == null)
+            return false;
+        if (!caching || !first.isContainerNode() || !second.isContainerNode())
+            return first.equals(second);
+
+        Entry firstEntry = entry(first);
+        Entry secondEntry = entry(second);
+        return firstEntry.digest == secondEntry.digest
+                && firstEntry.size == secondEntry.size
+                && first.equals(second);
+    }
+
+    /**
+     * Wraps a node into a hash key whose {@code hashCode} and {@code equals} go through this cache.
+     */
+    Key key(JsonNode node) {
+        return new Key(node, digest(node));
+    }
+
+    /**
+     * Sets whether computed digests are stored. Without caching no entry outlives the call computing
+     * it, at the price of rehashing a subtree each time its digest is asked for.
+     */
+    void setCaching(boolean caching) {
+        this.caching = caching;
+    }
+
+    /** Returns the number of digests stored in this cache, not counting its parents. */
+    int cachedEntries() {
+        return cache.size();
+    }
+
+    void clear() {
+        if (cache.size() > MAX_RETAINED_ENTRIES)
+            cache = new IdentityHashMap<JsonNode, Entry>();
+        else
+            cache.clear();
+    }
+
+    private Entry entry(JsonNode node) {
+        Entry entry = cache.get(node);
+        for (NodeDigests p = parent; entry == null && p != null; p = p.parent)
+            entry = p.cache.get(node);
+        if (entry == null) {
+            entry = node.isArray() ? arrayEntry(node) : objectEntry(node);
+            if (caching)
+                cache.put(node, entry);
+        }
+        return entry;
+    }
+
+    private Entry arrayEntry(JsonNode node) {
+        long hash = ARRAY_SEED;
+        int size = 1;
+        for (JsonNode child : node) {
+            hash = hash * PRIME + digest(child);
+            size += size(child);
+        }
+        return new Entry(mix(hash ^ node.size()), size);
+    }
+
+    private Entry objectEntry(JsonNode node) {
+        // Field order does not take part in ObjectNode.equals, so fields are combined commutatively
+        long hash = OBJECT_SEED;
+        int size = 1;
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            hash += mix(field.getKey().hashCode() * PRIME ^ digest(field.getValue()));
+            size += size(field.getValue());
+        }
+        return new Entry(mix(hash ^ node.size()), size);
+    }
+
+    private static long scalarDigest(JsonNode node) {
+        return mix(((long) node.getNodeType().ordinal() << 32) ^ (node.hashCode() & 0xFFFFFFFFL));
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Entry {
+        private final long digest;
+        private final int size;
+
+        private Entry(long digest, int size) {
+            this.digest = digest;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A node wrapped for use as a hash key; hashing is O(1) once the digest is known.
+     */
+    static final class Key {
+        private final JsonNode node;
+        private final long digest;
+
+        private Key(JsonNode node, long digest) {
+            this.node = node;
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+            return digest == that.digest && node.equals(that.node);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (digest ^ (digest >>> 32));
+        }
+    }
+}
@@ -53,7 +53,8 @@ enum Operation {
 
     public static Operation fromRfcName(String rfcName) throws InvalidJsonPatchException {
         if (rfcName == null) throw new InvalidJsonPatchException("rfcName cannot be null");
-        Operation op = OPS.get(rfcName.toLowerCase());
+        Operation op = OPS.get(rfcName);
+        if (op == null) op = OPS.get(rfcName.toLowerCase());
         if (op == null) throw new InvalidJsonPatchException("unknown / unsupported operation " + rfcName);
         return op;
     }
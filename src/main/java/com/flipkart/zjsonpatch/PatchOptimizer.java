@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites a patch into a shorter one with the same effect, without looking at the document.
+ *
+ * <p>Each operation is folded into the latest preceding operation it overrides, provided that every
+ * operation in between commutes with it. Operations commute when neither can change what the other
+ * one reads or writes: their paths must diverge above the modified locations, or at them between two
+ * object fields. Tokens that look like array indexes may address an array, in which case inserts and
+ * removals shift the following elements; only folds that hold for arrays and objects alike are done
+ * at such paths. Operations are folded
+ * <ul>
+ *     <li>into an earlier operation on the same path, e.g. an {@code add} followed by a {@code replace};</li>
+ *     <li>into the value of an earlier {@code add} or {@code replace} of an enclosing path, by applying
+ *     them to that value, where array indexes are known exactly;</li>
+ *     <li>through a {@code move} of an enclosing path, by rebasing them onto its {@code from} path.</li>
+ * </ul>
+ * {@link Operation#TEST} operations are never moved across operations that may affect the tested value,
+ * and only dropped when they are known to pass.
+ */
+final class PatchOptimizer {
+
+    private final EnumSet<CompatibilityFlags> flags;
+    private final List<Op> ops = new ArrayList<Op>();
+    // Number of operations in ops per path, to skip the backwards scan for paths seen for the first time
+    private final Map<JsonPointer, Integer> pathCounts = new HashMap<JsonPointer, Integer>();
+
+    private PatchOptimizer(EnumSet<CompatibilityFlags> flags) {
+        this.flags = flags;
+    }
+
+    static JsonNode optimize(JsonNode patch, EnumSet<CompatibilityFlags> flags) throws InvalidJsonPatchException {
+        return compose(Collections.singletonList(patch), flags);
+    }
+
+    static JsonNode compose(Iterable<JsonNode> patches, EnumSet<CompatibilityFlags> flags) throws InvalidJsonPatchException {
+        PatchOptimizer optimizer = new PatchOptimizer(flags);
+        for (JsonNode patch : patches) {
+            CompiledPatch compiled = CompiledPatch.compile(patch, flags, false);
+            Iterator<JsonNode> nodes = patch.iterator();
+            for (int i = 0; i < compiled.size(); i++) {
+                Op op = new Op(compiled.operation(i), compiled.path(i), compiled.from(i), compiled.value(i), nodes.next());
+                optimizer.add(op, optimizer.ops.size());
+            }
+        }
+        return optimizer.toPatch();
+    }
+
+    /**
+     * Adds {@code op} at position {@code end}, all operations from there on commuting with it.
+     */
+    private void add(Op op, int end) {
+        if (!isFoldable(op) || !fold(op, end)) {
+            ops.add(end, op);
+            Integer count = pathCounts.get(op.path);
+            pathCounts.put(op.path, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Folds {@code op} into the operations before position {@code end}, all operations from there on
+     * commuting with it.
+     *
+     * @return whether {@code op} was folded; if not, the operations are unchanged
+     */
+    private boolean fold(Op op, int end) {
+        if (!mayOverride(op.path))
+            return false;
+        for (int i = end - 1; i >= 0; i--) {
+            Op earlier = ops.get(i);
+            if (earlier.path.equals(op.path)) {
+                Op merged = merge(earlier, op);
+                if (merged == null)
+                    return false;
+                if (merged != earlier) {
+                    remove(i);
+                    add(merged, i);
+                }
+                return true;
+            }
+            if (op.path.startsWith(earlier.path)) {
+                if (isAppend(earlier.path))
+                    return false;
+                switch (earlier.operation) {
+                    case ADD:
+                    case REPLACE:
+                        Op merged = applyToValue(earlier, op);
+                        if (merged == null)
+                            return false;
+                        if (merged != earlier) {
+                            remove(i);
+                            add(merged, i);
+                        }
+                        return true;
+                    case MOVE:
+                        return fold(op.withPath(op.path.replacePrefix(earlier.path.size(), earlier.from)), i);
+                    default:
+                        return false;
+                }
+            }
+            if (!commute(earlier, op))
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * Whether an operation on {@code path} or on a path enclosing it has been added.
+     */
+    private boolean mayOverride(JsonPointer path) {
+        // Looking up every prefix is cheaper than scanning the operations for the common case of a fresh path
+        for (JsonPointer prefix = path; ; prefix = prefix.getParent()) {
+            if (pathCounts.containsKey(prefix))
+                return true;
+            if (prefix.isRoot())
+                return false;
+        }
+    }
+
+    /**
+     * Applies {@code op} to the value written by {@code earlier}, which encloses its path.
+     *
+     * @return {@code earlier} with the updated value, {@code earlier} itself if {@code op} is a passing
+     * test, or {@code null} if {@code op} fails on the value
+     */
+    private Op applyToValue(Op earlier, Op op) {
+        JsonPointer path = op.path.replacePrefix(earlier.path.size(), JsonPointer.ROOT);
+        InPlaceApplyProcessor processor = new InPlaceApplyProcessor(earlier.value.deepCopy(), flags);
+        try {
+            switch (op.operation) {
+                case ADD:
+                    processor.add(path, op.value.deepCopy());
+                    break;
+                case REPLACE:
+                    processor.replace(path, op.value.deepCopy());
+                    break;
+                case REMOVE:
+                    processor.remove(path);
+                    break;
+                case TEST:
+                    processor.test(path, op.value);
+                    return earlier;
+                default:
+                    return null;
+            }
+        } catch (JsonPointerEvaluationException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // The patch fails at this operation; keep it for the error
+            return null;
+        }
+        return new Op(earlier.operation, earlier.path, null, processor.result(), null);
+    }
+
+    private void remove(int i) {
+        JsonPointer path = ops.remove(i).path;
+        int count = pathCounts.get(path);
+        if (count == 1)
+            pathCounts.remove(path);
+        else
+            pathCounts.put(path, count - 1);
+    }
+
+    private static boolean isAppend(JsonPointer path) {
+        return !path.isRoot() && path.last().isArrayIndex() && path.last().getIndex() == JsonPointer.LAST_INDEX;
+    }
+
+    private static boolean isFoldable(Op op) {
+        switch (op.operation) {
+            case MOVE:
+            case COPY:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Merges {@code op} into the earlier operation on the same path.
+     *
+     * @return the merged operation, {@code earlier} if {@code op} has no effect after it, or {@code null}
+     * if the two can't be merged
+     */
+    private static Op merge(Op earlier, Op op) {
+        // Appending to an array never addresses the same element twice
+        if (isAppend(op.path))
+            return null;
+        // Whether the path certainly addresses an object field rather than an array element
+        boolean field = !op.path.isRoot() && !op.path.last().isArrayIndex();
+
+        if (op.operation == Operation.TEST) {
+            switch (earlier.operation) {
+                case ADD:
+                case REPLACE:
+                case TEST:
+                    return earlier.value.equals(op.value) ? earlier : null;
+                default:
+                    return null;
+            }
+        }
+
+        switch (earlier.operation) {
+            case ADD:
+            case COPY:
+                if (op.operation == Operation.REPLACE)
+                    return new Op(Operation.ADD, op.path, null, op.value, null);
+                if (op.operation == Operation.ADD && field)
+                    return op;
+                // A bare remove would fail where the field didn't exist before; keep the pair
+                return null;
+
+            case REPLACE:
+                if (op.operation == Operation.ADD && field)
+                    return new Op(Operation.REPLACE, op.path, null, op.value, null);
+                if (op.operation == Operation.REPLACE || op.operation == Operation.REMOVE)
+                    return op;
+                return null;
+
+            case REMOVE:
+                if ((op.operation == Operation.ADD || op.operation == Operation.REMOVE) && field)
+                    return op;
+                return null;
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Whether {@code earlier} and {@code op}, a foldable operation, can be swapped.
+     */
+    private static boolean commute(Op earlier, Op op) {
+        JsonPointer path = op.path;
+        if (op.operation == Operation.TEST) {
+            switch (earlier.operation) {
+                case TEST:
+                    return true;
+                case MOVE:
+                    return CompiledPatch.unaffected(path, earlier.from) && CompiledPatch.unaffected(path, earlier.path);
+                default:
+                    return CompiledPatch.unaffected(path, earlier.path);
+            }
+        }
+        switch (earlier.operation) {
+            case TEST:
+                return CompiledPatch.unaffected(earlier.path, path);
+            case COPY:
+                return CompiledPatch.unaffected(earlier.from, path) && independent(earlier.path, path);
+            case MOVE:
+                return independent(earlier.from, path) && independent(earlier.path, path);
+            default:
+                return independent(earlier.path, path);
+        }
+    }
+
+    private static boolean independent(JsonPointer first, JsonPointer second) {
+        return CompiledPatch.unaffected(first, second) && CompiledPatch.unaffected(second, first);
+    }
+
+    private JsonNode toPatch() {
+        ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+        for (Op op : ops) {
+            if (op.node != null) {
+                patch.add(op.node.deepCopy());
+            } else {
+                ObjectNode node = patch.addObject();
+                node.put(Constants.OP, op.operation.rfcName());
+                node.put(Constants.PATH, op.path.toString());
+                if (op.value != null)
+                    node.set(Constants.VALUE, op.value.deepCopy());
+            }
+        }
+        return patch;
+    }
+
+    private static final class Op {
+        private final Operation operation;
+        private final JsonPointer path;
+        private final JsonPointer from;
+        private final JsonNode value;
+        // The operation as it appears in the patch, null if it was rewritten
+        private final JsonNode node;
+
+        private Op(Operation operation, JsonPointer path, JsonPointer from, JsonNode value, JsonNode node) {
+            this.operation = operation;
+            this.path = path;
+            this.from = from;
+            this.value = value;
+            this.node = node;
+        }
+
+        private Op withPath(JsonPointer path) {
+            return new Op(operation, path, from, value, null);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the nodes along the last resolved path, so that resolving a path sharing a prefix with it
+ * resumes from their deepest common ancestor instead of walking down from the root again.
+ *
+ * <p>The remembered nodes stay valid as long as the document is only modified at the node resolved
+ * last, as nothing above it is affected. The apply processors guarantee this by resolving the parent
+ * of every location right before modifying it. A replaced document root is detected, and processors
+ * that replace remembered containers {@link #replace(int, JsonNode) update} them.
+ */
+final class PointerCursor {
+
+    private JsonPointer path;
+    // Number of leading tokens of path whose nodes are remembered
+    private int depth;
+    // nodes[i] is the node at the first i tokens of path
+    private JsonNode[] nodes = new JsonNode[8];
+
+    /**
+     * Resolves the first {@code size} tokens of {@code pointer} against {@code document}, reporting failures
+     * like {@link JsonPointer#evaluate(JsonNode)}.
+     */
+    JsonNode resolve(JsonNode document, JsonPointer pointer, int size) throws JsonPointerEvaluationException {
+        int common = 0;
+        if (path != null && nodes[0] == document) {
+            int max = Math.min(depth, size);
+            if (path == pointer)
+                common = max;
+            else
+                while (common < max && path.get(common).equals(pointer.get(common)))
+                    common++;
+        }
+
+        if (nodes.length <= size)
+            nodes = Arrays.copyOf(nodes, Math.max(size + 1, nodes.length * 2));
+        nodes[0] = document;
+        path = pointer;
+        depth = common;
+        JsonNode node = pointer.evaluate(document, common, size, nodes);
+        depth = size;
+        return node;
+    }
+
+    /** Returns the node at the first {@code depth} tokens of the path resolved last */
+    JsonNode node(int depth) {
+        return nodes[depth];
+    }
+
+    /** Replaces the node at the first {@code depth} tokens of the path resolved last */
+    void replace(int depth, JsonNode node) {
+        nodes[depth] = node;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Walks two token streams in lockstep and feeds the regions where they differ to a {@link JsonDiff}
+ * engine, producing the same diffs as comparing the fully parsed documents.
+ *
+ * <p>Objects are walked field by field for as long as both sides list the same field names in the
+ * same order; values under such fields are compared recursively without being parsed into trees.
+ * Once the field names diverge, the remaining fields of both objects are read into trees and handed
+ * to {@link JsonDiff#compareObjects}. Arrays are read one element pair at a time while the elements
+ * are equal, and equal pairs are discarded. At a difference, a window of up to {@link #DEFAULT_WINDOW}
+ * elements is read from each side. If both arrays end within it, the windows are compared by LCS as
+ * the rest of the arrays. Otherwise the nearest point where both windows continue with a few equal
+ * elements is searched for; the windows are compared by LCS up to it, or as a whole if there is none,
+ * and the walk resumes after the compared region. So at most two windows of elements are held at a
+ * time, at the price of patches that may be longer than a full LCS would give for arrays with changes
+ * spread over more than a window. Scalars, values of different types and arrays treated as sets are
+ * always read into trees.
+ */
+final class TokenDiff {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    /** Elements read from each array at a difference */
+    static final int DEFAULT_WINDOW = 256;
+
+    /** Equal elements that must follow a resynchronization point within the windows */
+    private static final int ANCHOR_LENGTH = 4;
+
+    private final JsonDiff engine;
+    private final boolean arraysAsSets;
+    private final int window;
+    // Digests of the elements of the current windows, cleared after each region
+    private final NodeDigests digests = new NodeDigests();
+    // Largest number of array elements held at once, both sides together
+    private int peakBuffered;
+
+    TokenDiff(JsonDiff engine, EnumSet<DiffFlags> flags) {
+        this(engine, flags, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window the number of elements read from each array at a difference, at least twice the
+     *               length of a resynchronization anchor
+     */
+    TokenDiff(JsonDiff engine, EnumSet<DiffFlags> flags, int window) {
+        this.engine = engine;
+        this.arraysAsSets = flags.contains(DiffFlags.TREAT_ARRAYS_AS_SETS);
+        // A window must hold an anchor behind a change to ever resynchronize
+        this.window = Math.max(window, 2 * ANCHOR_LENGTH);
+    }
+
+    int peakBuffered() {
+        return peakBuffered;
+    }
+
+    /**
+     * Diffs the next value of each parser. A parser with no content left stands for a missing
+     * document, like a {@code null} node.
+     */
+    void diff(JsonParser source, JsonParser target) throws IOException {
+        boolean hasSource = source.hasCurrentToken() || source.nextToken() != null;
+        boolean hasTarget = target.hasCurrentToken() || target.nextToken() != null;
+
+        if (hasSource && hasTarget) {
+            diffValues(JsonPointer.ROOT, source, target);
+        } else if (hasTarget) {
+            engine.emit(Diff.generateDiff(Operation.ADD, JsonPointer.ROOT, read(target)));
+        } else if (hasSource) {
+            engine.emit(Diff.generateDiff(Operation.REMOVE, JsonPointer.ROOT, read(source)));
+        }
+    }
+
+    /**
+     * Compares the values starting at the current tokens, leaving each parser on the last token of its value.
+     */
+    private void diffValues(JsonPointer path, JsonParser source, JsonParser target) throws IOException {
+        JsonToken sourceToken = source.currentToken();
+        JsonToken targetToken = target.currentToken();
+
+        if (sourceToken == JsonToken.START_OBJECT && targetToken == JsonToken.START_OBJECT) {
+            diffObjects(path, source, target);
+        } else if (sourceToken == JsonToken.START_ARRAY && targetToken == JsonToken.START_ARRAY && !arraysAsSets) {
+            diffArrays(path, source, target);
+        } else {
+            engine.generateDiffs(path, read(source), read(target));
+        }
+    }
+
+    private void diffObjects(JsonPointer path, JsonParser source, JsonParser target) throws IOException {
+        while (true) {
+            JsonToken sourceToken = source.nextToken();
+            JsonToken targetToken = target.nextToken();
+
+            if (sourceToken == JsonToken.END_OBJECT && targetToken == JsonToken.END_OBJECT)
+                return;
+
+            if (sourceToken == JsonToken.FIELD_NAME && targetToken == JsonToken.FIELD_NAME
+                    && source.getCurrentName().equals(target.getCurrentName())) {
+                String name = source.getCurrentName();
+                source.nextToken();
+                target.nextToken();
+                diffValues(path.append(name), source, target);
+                continue;
+            }
+
+            // The fields walked so far occur on both sides, so the rest can be compared on its own
+            engine.compareObjects(path, readFields(source), readFields(target));
+            return;
+        }
+    }
+
+    private void diffArrays(JsonPointer path, JsonParser source, JsonParser target) throws IOException {
+        Elements sourceElements = new Elements(source);
+        Elements targetElements = new Elements(target);
+        // Position of the next element to compare in the array being patched
+        int offset = 0;
+
+        while (true) {
+            while (sourceElements.fill(1) > 0 && targetElements.fill(1) > 0
+                    && sourceElements.get(0).equals(targetElements.get(0))) {
+                sourceElements.drop(1);
+                targetElements.drop(1);
+                offset++;
+            }
+
+            int sourceSize = sourceElements.fill(window);
+            int targetSize = targetElements.fill(window);
+            peakBuffered = Math.max(peakBuffered, sourceSize + targetSize);
+            if (sourceSize == 0 && targetSize == 0)
+                return;
+
+            int sourceCount = sourceSize;
+            int targetCount = targetSize;
+            if (!sourceElements.ended || !targetElements.ended) {
+                long anchor = findAnchor(sourceElements, targetElements);
+                if (anchor >= 0) {
+                    sourceCount = (int) (anchor >>> 32);
+                    targetCount = (int) anchor;
+                }
+            }
+            engine.compareArray(path, sourceElements.take(sourceCount), targetElements.take(targetCount), offset);
+            engine.releaseDigests();
+            digests.clear();
+            offset += targetCount;
+        }
+    }
+
+    /**
+     * Returns the position {@code (i << 32) | j} closest to the start of both windows after which they
+     * continue with {@link #ANCHOR_LENGTH} equal elements, or with equal elements up to the end of an array,
+     * or -1 if there is none. The windows start with a differing pair, so the position is never (0, 0).
+     */
+    private long findAnchor(Elements source, Elements target) {
+        int sourceSize = source.size();
+        int targetSize = target.size();
+        long[] sourceDigests = source.digests(digests);
+        long[] targetDigests = target.digests(digests);
+        for (int distance = 1; distance <= sourceSize + targetSize - 2; distance++) {
+            for (int i = Math.max(0, distance - targetSize + 1); i <= Math.min(distance, sourceSize - 1); i++) {
+                int j = distance - i;
+                int run = 0;
+                while (i + run < sourceSize && j + run < targetSize && run < ANCHOR_LENGTH
+                        && sourceDigests[i + run] == targetDigests[j + run]
+                        && source.get(i + run).equals(target.get(j + run)))
+                    run++;
+                if (run == ANCHOR_LENGTH || (i + run == sourceSize && source.ended)
+                        || (j + run == targetSize && target.ended))
+                    return ((long) i << 32) | j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The elements of an array read ahead of the comparison, in order.
+     */
+    private static final class Elements {
+        private final JsonParser parser;
+        private final List<JsonNode> buffer = new ArrayList<JsonNode>();
+        private int head;
+        private boolean ended;
+
+        private Elements(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Reads elements until {@code count} are buffered or the array ends, leaving the parser on its
+         * end token in the latter case, and returns the number buffered.
+         */
+        private int fill(int count) throws IOException {
+            if (ended || size() >= count)
+                return size();
+            buffer.subList(0, head).clear();
+            head = 0;
+            while (!ended && buffer.size() < count) {
+                if (parser.nextToken() == JsonToken.END_ARRAY)
+                    ended = true;
+                else
+                    buffer.add(read(parser));
+            }
+            return buffer.size();
+        }
+
+        private int size() {
+            return buffer.size() - head;
+        }
+
+        private JsonNode get(int i) {
+            return buffer.get(head + i);
+        }
+
+        private void drop(int count) {
+            head += count;
+        }
+
+        /** Removes the first {@code count} elements, returning them as an array. */
+        private ArrayNode take(int count) {
+            ArrayNode elements = FACTORY.arrayNode(count);
+            for (int i = 0; i < count; i++) {
+                elements.add(get(i));
+            }
+            head += count;
+            return elements;
+        }
+
+        private long[] digests(NodeDigests digests) {
+            long[] result = new long[size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = digests.digest(get(i));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Reads the fields from the current token up to the end of the object.
+     */
+    private static ObjectNode readFields(JsonParser parser) throws IOException {
+        ObjectNode fields = FACTORY.objectNode();
+        for (JsonToken token = parser.currentToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            fields.set(name, read(parser));
+        }
+        return fields;
+    }
+
+    private static JsonNode read(JsonParser parser) throws IOException {
+        return MAPPER.readTree(parser);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies a patch in place while recording how to revert every modification, so that a failed
+ * application can be {@link #rollback() rolled back}.
+ *
+ * <p>The undo log holds one small entry per modification, referring to the replaced or removed
+ * values rather than copying them. Field order is restored as well: the first time a field is
+ * removed from an object, the object's field names are recorded so they can be put back in order.
+ * Until then, fields can only have been replaced in place or appended, so the recorded order lists
+ * the original fields in their original order.
+ */
+class TransactionalApplyProcessor extends InPlaceApplyProcessor {
+
+    private static final int SET_ROOT = 0;
+    private static final int PUT_FIELD = 1;
+    private static final int REMOVE_FIELD = 2;
+    private static final int SET_ELEMENT = 3;
+    private static final int INSERT_ELEMENT = 4;
+    private static final int REMOVE_ELEMENT = 5;
+    private static final int SET_ELEMENTS = 6;
+
+    private final List<Undo> log = new ArrayList<Undo>();
+    private Map<ObjectNode, String[]> fieldOrders;
+
+    TransactionalApplyProcessor(JsonNode target, EnumSet<CompatibilityFlags> flags) {
+        super(target, flags);
+    }
+
+    @Override
+    void setRoot(JsonNode value) {
+        log.add(new Undo(SET_ROOT, null, null, 0, target));
+        super.setRoot(value);
+    }
+
+    @Override
+    JsonNode putField(ObjectNode object, String field, JsonNode value) {
+        JsonNode previous = super.putField(object, field, value);
+        log.add(new Undo(PUT_FIELD, object, field, 0, previous));
+        return previous;
+    }
+
+    @Override
+    JsonNode removeField(ObjectNode object, String field) {
+        if (!object.has(field))
+            return null;
+        recordFieldOrder(object);
+        JsonNode previous = super.removeField(object, field);
+        log.add(new Undo(REMOVE_FIELD, object, field, 0, previous));
+        return previous;
+    }
+
+    @Override
+    JsonNode setElement(ArrayNode array, int index, JsonNode value) {
+        JsonNode previous = super.setElement(array, index, value);
+        log.add(new Undo(SET_ELEMENT, array, null, index, previous));
+        return previous;
+    }
+
+    @Override
+    void insertElement(ArrayNode array, int index, JsonNode value) {
+        int position = Math.min(Math.max(index, 0), array.size());
+        super.insertElement(array, index, value);
+        log.add(new Undo(INSERT_ELEMENT, array, null, position, null));
+    }
+
+    @Override
+    JsonNode removeElement(ArrayNode array, int index) {
+        JsonNode previous = super.removeElement(array, index);
+        if (previous != null)
+            log.add(new Undo(REMOVE_ELEMENT, array, null, index, previous));
+        return previous;
+    }
+
+    @Override
+    void setElements(ArrayNode array, JsonNode[] elements, int count) {
+        ArrayNode previous = array.arrayNode(array.size());
+        previous.addAll(array);
+        super.setElements(array, elements, count);
+        log.add(new Undo(SET_ELEMENTS, array, null, 0, previous));
+    }
+
+    private void recordFieldOrder(ObjectNode object) {
+        if (fieldOrders == null)
+            fieldOrders = new IdentityHashMap<ObjectNode, String[]>();
+        if (fieldOrders.containsKey(object))
+            return;
+
+        String[] names = new String[object.size()];
+        Iterator<String> fieldNames = object.fieldNames();
+        for (int i = 0; i < names.length; i++) {
+            names[i] = fieldNames.next();
+        }
+        fieldOrders.put(object, names);
+    }
+
+    /**
+     * Reverts every modification made so far, newest first, leaving the document exactly as it was.
+     */
+    void rollback() {
+        for (int i = log.size() - 1; i >= 0; i--) {
+            Undo undo = log.get(i);
+            switch (undo.kind) {
+                case SET_ROOT:
+                    target = undo.value;
+                    break;
+                case PUT_FIELD:
+                    if (undo.value == null)
+                        ((ObjectNode) undo.container).remove(undo.field);
+                    else
+                        ((ObjectNode) undo.container).replace(undo.field, undo.value);
+                    break;
+                case REMOVE_FIELD:
+                    ((ObjectNode) undo.container).replace(undo.field, undo.value);
+                    break;
+                case SET_ELEMENT:
+                    ((ArrayNode) undo.container).set(undo.index, undo.value);
+                    break;
+                case INSERT_ELEMENT:
+                    ((ArrayNode) undo.container).remove(undo.index);
+                    break;
+                case REMOVE_ELEMENT:
+                    ((ArrayNode) undo.container).insert(undo.index, undo.value);
+                    break;
+                case SET_ELEMENTS:
+                    ((ArrayNode) undo.container).removeAll().addAll((ArrayNode) undo.value);
+                    break;
+            }
+        }
+        log.clear();
+
+        if (fieldOrders != null) {
+            for (Map.Entry<ObjectNode, String[]> order : fieldOrders.entrySet()) {
+                restoreFieldOrder(order.getKey(), order.getValue());
+            }
+            fieldOrders = null;
+        }
+    }
+
+    private static void restoreFieldOrder(ObjectNode object, String[] names) {
+        JsonNode[] values = new JsonNode[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = object.get(names[i]);
+        }
+        object.removeAll();
+        for (int i = 0; i < names.length; i++) {
+            // Fields added before the order was recorded are gone again
+            if (values[i] != null)
+                object.set(names[i], values[i]);
+        }
+    }
+
+    private static final class Undo {
+        private final int kind;
+        private final JsonNode container;
+        private final String field;
+        private final int index;
+        private final JsonNode value;
+
+        private Undo(int kind, JsonNode container, String field, int index, JsonNode value) {
+            this.kind = kind;
+            this.container = container;
+            this.field = field;
+            this.index = index;
+            this.value = value;
+        }
+    }
+}
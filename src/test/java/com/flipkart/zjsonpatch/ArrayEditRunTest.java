@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ArrayEditRunTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static JsonNode document(int size) {
+        ObjectNode document = MAPPER.createObjectNode();
+        ArrayNode array = document.putArray("a");
+        for (int i = 0; i < size; i++) {
+            array.add(i);
+        }
+        return document;
+    }
+
+    private static ObjectNode edit(Random random, int size) {
+        ObjectNode op = MAPPER.createObjectNode();
+        // Indexes are mostly valid, but may lie one past the end
+        int index = random.nextInt(size + 2);
+        if (random.nextInt(3) == 0) {
+            op.put("op", "remove").put("path", "/a/" + index);
+        } else {
+            op.put("op", "add").put("path", "/a/" + (random.nextInt(8) == 0 ? "-" : String.valueOf(index)));
+            op.putObject("value").put("v", random.nextInt(100));
+        }
+        return op;
+    }
+
+    /** Applies the operations one at a time, which never batches them */
+    private static JsonNode applyOneByOne(JsonNode patch, JsonNode source) {
+        JsonNode result = source.deepCopy();
+        for (JsonNode op : patch) {
+            ArrayNode single = MAPPER.createArrayNode();
+            single.add(op);
+            result = JsonPatch.apply(single, result);
+        }
+        return result;
+    }
+
+    @Test
+    public void runsMatchSequentialApplication() {
+        Random random = new Random(37);
+        for (int i = 0; i < 500; i++) {
+            JsonNode source = document(random.nextInt(20));
+            ArrayNode patch = MAPPER.createArrayNode();
+            int size = source.get("a").size();
+            int length = 8 + random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                ObjectNode op = edit(random, Math.max(size, 0));
+                patch.add(op);
+                size += "add".equals(op.get("op").textValue()) ? 1 : -1;
+            }
+
+            JsonNode expected;
+            String failure = null;
+            try {
+                expected = applyOneByOne(patch, source);
+            } catch (JsonPatchApplicationException e) {
+                expected = null;
+                failure = e.getMessage();
+            }
+
+            JsonPatchResult result = JsonPatch.tryApply(patch, source);
+            JsonNode inPlace = source.deepCopy();
+            JsonNode atomic = source.deepCopy();
+            try {
+                JsonPatch.applyInPlaceAtomically(patch, atomic);
+                assertEquals(patch.toString(), expected, atomic);
+            } catch (JsonPatchApplicationException e) {
+                assertEquals(patch.toString(), failure, e.getMessage());
+                assertEquals(source, atomic);
+            }
+            if (expected != null) {
+                assertEquals(patch.toString(), expected, result.getTarget());
+                assertEquals(patch.toString(), expected, JsonPatch.applyCopyOnWrite(patch, source));
+                JsonPatch.applyInPlace(patch, inPlace);
+                assertEquals(patch.toString(), expected, inPlace);
+            } else {
+                assertEquals(patch.toString(), failure, result.getReason());
+            }
+        }
+    }
+
+    @Test
+    public void failingEditLeavesPrecedingEditsApplied() throws IOException {
+        JsonNode patch = MAPPER.readTree("[" +
+                "{\"op\":\"add\",\"path\":\"/a/0\",\"value\":10},{\"op\":\"add\",\"path\":\"/a/1\",\"value\":11}," +
+                "{\"op\":\"remove\",\"path\":\"/a/2\"},{\"op\":\"add\",\"path\":\"/a/-\",\"value\":12}," +
+                "{\"op\":\"remove\",\"path\":\"/a/0\"},{\"op\":\"add\",\"path\":\"/a/3\",\"value\":13}," +
+                "{\"op\":\"remove\",\"path\":\"/a/1\"},{\"op\":\"add\",\"path\":\"/a/9\",\"value\":14}," +
+                "{\"op\":\"remove\",\"path\":\"/a/0\"}]");
+        JsonNode source = MAPPER.readTree("{\"a\": [0, 1, 2]}");
+
+        try {
+            JsonPatch.applyInPlace(patch, source);
+            fail("index 9 is out of bounds");
+        } catch (JsonPatchApplicationException e) {
+            assertEquals(Operation.ADD, e.operation);
+        }
+        assertEquals(MAPPER.readTree("{\"a\": [11, 2, 13, 12]}"), source);
+    }
+
+    @Test
+    public void onlyAppliedValuesAreCopied() throws IOException {
+        JsonNode document = document(2);
+        InPlaceApplyProcessor processor = new InPlaceApplyProcessor(document);
+        JsonNode first = MAPPER.readTree("{\"v\": 1}");
+        JsonNode second = MAPPER.readTree("{\"v\": 2}");
+        JsonNode[] values = {first, null, second};
+
+        // The third edit inserts past the end of the array
+        int applied = processor.editArray(JsonPointer.parse("/a/0"), new int[]{0, 2, 5}, values, true);
+
+        assertEquals(2, applied);
+        assertNotSame(first, values[0]);
+        assertSame(values[0], document.get("a").get(0));
+        assertSame(second, values[2]);
+    }
+
+    @Test
+    public void runsOnObjectsApplyAsFields() throws IOException {
+        ArrayNode patch = MAPPER.createArrayNode();
+        for (int i = 0; i < 10; i++) {
+            patch.addObject().put("op", "add").put("path", "/o/" + i).put("value", i);
+        }
+        patch.addObject().put("op", "remove").put("path", "/o/3");
+
+        JsonNode result = JsonPatch.apply(patch, MAPPER.readTree("{\"o\": {}}"));
+
+        assertEquals(9, result.get("o").size());
+        assertEquals(4, result.get("o").get("4").intValue());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ArrayShiftIndexTest {
+
+    private static Diff diff(Operation operation, String path) {
+        return new Diff(operation, JsonPointer.parse(path), TextNode.valueOf("v"));
+    }
+
+    @Test
+    public void sumsShiftsPerParentArrayWithinRange() {
+        Diff[] diffs = new Diff[]{
+                diff(Operation.REMOVE, "/a/0"),
+                diff(Operation.ADD, "/b/3"),
+                diff(Operation.REMOVE, "/a/4"),
+                diff(Operation.REPLACE, "/a/1"),
+                diff(Operation.ADD, "/a/2"),
+                diff(Operation.ADD, "/a/field"),
+                diff(Operation.REMOVE, "/a/5/c/0"),
+        };
+        ArrayShiftIndex shifts = new ArrayShiftIndex(diffs);
+
+        JsonPointer a = JsonPointer.parse("/a");
+        assertEquals(2, shifts.shift(a, 0, 3));
+        assertEquals(1, shifts.shift(a, 0, 4));
+        assertEquals(0, shifts.shift(a, 2, 6));
+        assertEquals(-1, shifts.shift(JsonPointer.parse("/b"), 0, 6));
+        assertEquals(1, shifts.shift(JsonPointer.parse("/a/5/c"), 0, 6));
+        assertEquals(0, shifts.shift(JsonPointer.ROOT, 0, 6));
+        assertEquals(0, shifts.shift(a, 3, 2));
+    }
+
+    @Test
+    public void clearedDiffsStopContributing() {
+        Diff[] diffs = new Diff[]{
+                diff(Operation.REMOVE, "/0"),
+                diff(Operation.REMOVE, "/1"),
+                diff(Operation.ADD, "/4"),
+        };
+        ArrayShiftIndex shifts = new ArrayShiftIndex(diffs);
+        assertEquals(1, shifts.shift(JsonPointer.ROOT, 0, 2));
+
+        shifts.clear(1);
+        assertEquals(0, shifts.shift(JsonPointer.ROOT, 0, 2));
+
+        shifts.clear(2);
+        assertEquals(1, shifts.shift(JsonPointer.ROOT, 0, 2));
+    }
+}
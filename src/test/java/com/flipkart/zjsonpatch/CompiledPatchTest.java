@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+public class CompiledPatchTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String PATCH = "[" +
+            "{\"op\":\"test\",\"path\":\"/a\",\"value\":1}," +
+            "{\"op\":\"add\",\"path\":\"/b/-\",\"value\":{\"c\":2}}," +
+            "{\"op\":\"REPLACE\",\"path\":\"/a\",\"value\":3}," +
+            "{\"op\":\"move\",\"from\":\"/b/0\",\"path\":\"/d\"}," +
+            "{\"op\":\"copy\",\"from\":\"/d\",\"path\":\"/e\"}," +
+            "{\"op\":\"remove\",\"path\":\"/b/0\"}]";
+
+    @Test
+    public void compiledPatchMatchesOneShotApply() throws IOException {
+        JsonNode patch = MAPPER.readTree(PATCH);
+        CompiledPatch compiled = JsonPatch.compile(patch);
+        assertEquals(6, compiled.size());
+
+        for (int i = 0; i < 3; i++) {
+            JsonNode source = MAPPER.readTree("{\"a\": 1, \"b\": [" + i + "]}");
+            JsonNode expected = JsonPatch.apply(patch, source);
+
+            assertEquals(expected, compiled.apply(source));
+            assertEquals(MAPPER.readTree("{\"a\": 1, \"b\": [" + i + "]}"), source);
+
+            compiled.applyInPlace(source);
+            assertEquals(expected, source);
+        }
+    }
+
+    @Test
+    public void compiledPatchIsIndependentOfPatchDocument() throws IOException {
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/a\",\"value\":{\"b\":1}}]");
+        CompiledPatch compiled = JsonPatch.compile(patch);
+        ((ObjectNode) patch.get(0).get("value")).put("b", 2);
+
+        JsonNode first = compiled.apply(MAPPER.createObjectNode());
+        ((ObjectNode) first.get("a")).put("b", 3);
+        JsonNode second = compiled.apply(MAPPER.createObjectNode());
+
+        assertEquals(MAPPER.readTree("{\"a\":{\"b\":1}}"), second);
+        assertNotSame(first.get("a"), second.get("a"));
+    }
+
+    @Test(expected = InvalidJsonPatchException.class)
+    public void malformedPatchFailsToCompile() throws IOException {
+        JsonPatch.compile(MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/a\"}]"));
+    }
+
+    @Test
+    public void missingValuesAsNullsAppliesToCompiledPatches() throws IOException {
+        CompiledPatch compiled = JsonPatch.compile(MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/a\"}]"),
+                EnumSet.of(CompatibilityFlags.MISSING_VALUES_AS_NULLS));
+
+        assertEquals(MAPPER.readTree("{\"a\":null}"), compiled.apply(MAPPER.createObjectNode()));
+    }
+
+    @Test
+    public void failingOperationReportsOperationAndPath() throws IOException {
+        CompiledPatch compiled = JsonPatch.compile(MAPPER.readTree(PATCH));
+        try {
+            compiled.apply(MAPPER.readTree("{\"a\": 2, \"b\": []}"));
+            fail("test operation should fail");
+        } catch (JsonPatchApplicationException e) {
+            assertEquals(Operation.TEST, e.operation);
+            assertEquals(JsonPointer.parse("/a"), e.path);
+        }
+    }
+
+    @Test
+    public void compiledPatchIsSharedBetweenThreads() throws Exception {
+        final CompiledPatch compiled = JsonPatch.compile(MAPPER.readTree(PATCH));
+        final JsonNode expected = MAPPER.readTree("{\"a\": 3, \"b\": [], \"d\": 7, \"e\": 7}");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        for (int i = 0; i < 500; i++) {
+                            JsonNode source = MAPPER.readTree("{\"a\": 1, \"b\": [7]}");
+                            assertEquals(expected, compiled.apply(source));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
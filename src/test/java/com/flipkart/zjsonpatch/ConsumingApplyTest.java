@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ConsumingApplyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String PATCH = "[" +
+            "{\"op\":\"test\",\"path\":\"/a\",\"value\":1}," +
+            "{\"op\":\"add\",\"path\":\"/b\",\"value\":[1, 2, 3]}," +
+            "{\"op\":\"replace\",\"path\":\"/a\",\"value\":{\"c\":[4]}}," +
+            "{\"op\":\"add\",\"path\":\"/a/c/-\",\"value\":5}," +
+            "{\"op\":\"copy\",\"from\":\"/b\",\"path\":\"/d\"}]";
+
+    @Test
+    public void consumingApplyMovesValuesIntoTheResult() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": 1}");
+        JsonNode expected = JsonPatch.apply(MAPPER.readTree(PATCH), source);
+        JsonNode patch = MAPPER.readTree(PATCH);
+
+        JsonNode result = JsonPatch.applyConsuming(patch, source);
+
+        assertEquals(expected, result);
+        assertEquals(MAPPER.readTree("{\"a\": 1}"), source);
+        assertSame(patch.get(1).get("value"), result.get("b"));
+        assertSame(patch.get(2).get("value"), result.get("a"));
+        assertNotSame(result.get("b"), result.get("d"));
+    }
+
+    @Test
+    public void consumingApplyInPlaceMovesValuesIntoTheSource() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": 1}");
+        JsonNode expected = JsonPatch.apply(MAPPER.readTree(PATCH), source);
+        JsonNode patch = MAPPER.readTree(PATCH);
+
+        JsonPatch.applyInPlaceConsuming(patch, source);
+
+        assertEquals(expected, source);
+        assertSame(patch.get(1).get("value"), source.get("b"));
+    }
+
+    @Test
+    public void applyStillCopiesValues() throws IOException {
+        JsonNode patch = MAPPER.readTree(PATCH);
+
+        JsonNode result = JsonPatch.apply(patch, MAPPER.readTree("{\"a\": 1}"));
+
+        assertNotSame(patch.get(1).get("value"), result.get("b"));
+        assertEquals(MAPPER.readTree(PATCH), patch);
+    }
+
+    @Test
+    public void failingTestLeavesSourceUnchanged() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": 2}");
+        try {
+            JsonPatch.applyConsuming(MAPPER.readTree(PATCH), source);
+            fail("test operation should fail");
+        } catch (JsonPatchApplicationException e) {
+            assertEquals(Operation.TEST, e.operation);
+        }
+        assertEquals(MAPPER.readTree("{\"a\": 2}"), source);
+    }
+}
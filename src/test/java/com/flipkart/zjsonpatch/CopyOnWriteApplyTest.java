@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CopyOnWriteApplyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final List<String> TEST_DATA = Arrays.asList(
+            "add", "copy", "move", "remove", "replace", "test", "js-libs-samples", "rfc6902-samples");
+
+    @Test
+    public void matchesCopyingApplyOnAllSamples() throws IOException {
+        for (String file : TEST_DATA) {
+            for (PatchTestCase p : PatchTestCase.load(file)) {
+                JsonNode source = p.getNode().get("node");
+                JsonNode patch = p.getNode().get("op");
+                JsonNode snapshot = source.deepCopy();
+
+                String expected;
+                try {
+                    expected = JsonPatch.apply(patch, source).toString();
+                } catch (RuntimeException e) {
+                    expected = e.toString();
+                }
+                String actual;
+                try {
+                    actual = JsonPatch.applyCopyOnWrite(patch, source).toString();
+                } catch (RuntimeException e) {
+                    actual = e.toString();
+                }
+
+                assertEquals(p.getNode().toString(), expected, actual);
+                assertEquals(p.getNode().toString(), snapshot, source);
+            }
+        }
+    }
+
+    @Test
+    public void untouchedSubtreesAreShared() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": {\"b\": [1, {\"c\": 2}], \"d\": {\"e\": 3}}, \"f\": [4]}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/a/b/1/c\",\"value\":5}," +
+                "{\"op\":\"add\",\"path\":\"/a/b/1/g\",\"value\":6}]");
+
+        JsonNode result = JsonPatch.applyCopyOnWrite(patch, source);
+
+        assertEquals(MAPPER.readTree("{\"a\": {\"b\": [1, {\"c\": 5, \"g\": 6}], \"d\": {\"e\": 3}}, \"f\": [4]}"), result);
+        assertEquals(2, source.get("a").get("b").get(1).get("c").intValue());
+        assertNotSame(source.get("a").get("b"), result.get("a").get("b"));
+        assertSame(source.get("a").get("d"), result.get("a").get("d"));
+        assertSame(source.get("f"), result.get("f"));
+    }
+
+    @Test
+    public void copiedValuesStayIndependent() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": {\"b\": 1}}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/x\",\"value\":{\"y\":1}}," +
+                "{\"op\":\"copy\",\"from\":\"/x\",\"path\":\"/z\"}," +
+                "{\"op\":\"copy\",\"from\":\"/a\",\"path\":\"/c\"}," +
+                "{\"op\":\"replace\",\"path\":\"/z/y\",\"value\":2}," +
+                "{\"op\":\"replace\",\"path\":\"/c/b\",\"value\":2}]");
+
+        JsonNode result = JsonPatch.applyCopyOnWrite(patch, source);
+
+        assertEquals(MAPPER.readTree("{\"a\": {\"b\": 1}, \"x\": {\"y\": 1}, \"z\": {\"y\": 2}, \"c\": {\"b\": 2}}"), result);
+        assertEquals(MAPPER.readTree("{\"a\": {\"b\": 1}}"), source);
+    }
+
+    @Test
+    public void insertedValuesAreModifiedInPlace() throws Exception {
+        JsonNode source = MAPPER.readTree("{\"a\": 1}");
+        JsonNode value = MAPPER.readTree("{\"b\": {\"c\": [1]}}");
+        JsonNode b = value.get("b");
+        JsonNode c = b.get("c");
+        CopyOnWriteApplyProcessor processor = new CopyOnWriteApplyProcessor(source, CompatibilityFlags.defaults());
+
+        processor.add(JsonPointer.parse("/x"), value);
+        processor.add(JsonPointer.parse("/x/b/d"), MAPPER.readTree("2"));
+        processor.add(JsonPointer.parse("/x/b/c/-"), MAPPER.readTree("3"));
+
+        JsonNode result = processor.result();
+        assertEquals(MAPPER.readTree("{\"a\": 1, \"x\": {\"b\": {\"c\": [1, 3], \"d\": 2}}}"), result);
+        assertSame(value, result.get("x"));
+        assertSame(b, result.get("x").get("b"));
+        assertSame(c, result.get("x").get("b").get("c"));
+        assertEquals(MAPPER.readTree("{\"a\": 1}"), source);
+    }
+
+    @Test
+    public void compiledPatchAppliesCopyOnWrite() throws IOException {
+        CompiledPatch patch = JsonPatch.compile(MAPPER.readTree("[{\"op\":\"remove\",\"path\":\"/a/0\"}]"));
+        JsonNode source = MAPPER.readTree("{\"a\": [1, 2], \"b\": {}}");
+
+        for (int i = 0; i < 2; i++) {
+            JsonNode result = patch.applyCopyOnWrite(source);
+            assertEquals(MAPPER.readTree("{\"a\": [2], \"b\": {}}"), result);
+            assertSame(source.get("b"), result.get("b"));
+        }
+        try {
+            patch.applyCopyOnWrite(MAPPER.readTree("{\"a\": {}}"));
+        } catch (JsonPatchApplicationException e) {
+            fail("removing a missing field is allowed: " + e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonDiffCopyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void unchangedScalarIsCopiedByDefault() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": 1, \"c\": {\"x\": [1, 2]}}");
+        JsonNode target = MAPPER.readTree("{\"a\": 1, \"b\": 1, \"c\": {\"x\": [1, 2]}}");
+
+        JsonNode diff = JsonDiff.asJson(source, target);
+
+        assertEquals(MAPPER.readTree("[{\"op\":\"copy\",\"from\":\"/a\",\"path\":\"/b\"}]"), diff);
+    }
+
+    @Test
+    public void valuesBelowMinimumCopySizeAreAdded() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": 1, \"c\": {\"x\": [1, 2]}}");
+        JsonNode target = MAPPER.readTree("{\"a\": 1, \"b\": 1, \"c\": {\"x\": [1, 2]}, \"d\": {\"x\": [1, 2]}}");
+
+        JsonNode diff = JsonDiff.asJson(source, target, DiffFlags.defaults(), 2);
+
+        assertEquals(MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/b\",\"value\":1}," +
+                "{\"op\":\"copy\",\"from\":\"/c\",\"path\":\"/d\"}]"), diff);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minimumCopySizeMustBePositive() throws IOException {
+        JsonDiff.asJson(MAPPER.readTree("{}"), MAPPER.readTree("{}"), DiffFlags.defaults(), 0);
+    }
+
+    @Test
+    public void copiesWithinLargeArraysApplyCleanly() {
+        Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            ArrayNode source = MAPPER.createArrayNode();
+            int size = 10 + random.nextInt(10);
+            for (int j = 0; j < size; j++) {
+                source.add(random.nextInt(30));
+            }
+            ArrayNode target = source.deepCopy();
+            for (int j = 0; j < 3; j++) {
+                target.insert(random.nextInt(target.size() + 1), source.get(random.nextInt(size)));
+                target.remove(random.nextInt(target.size()));
+            }
+
+            JsonNode diff = JsonDiff.asJson(source, target, EnumSet.noneOf(DiffFlags.class));
+
+            assertEquals(diff.toString(), target, JsonPatch.apply(diff, source));
+        }
+    }
+}
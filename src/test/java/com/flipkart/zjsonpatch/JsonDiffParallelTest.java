@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class JsonDiffParallelTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final List<EnumSet<DiffFlags>> FLAG_SETS = Arrays.asList(
+            DiffFlags.defaults(),
+            EnumSet.noneOf(DiffFlags.class),
+            DiffFlags.dontNormalizeOpIntoMoveAndCopy(),
+            EnumSet.of(DiffFlags.EMIT_TEST_OPERATIONS, DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE));
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void parallelDiffMatchesSequentialDiff() {
+        Random random = new Random(17);
+        for (EnumSet<DiffFlags> flags : FLAG_SETS) {
+            for (int i = 0; i < 100; i++) {
+                JsonNode source = randomDocument(random, 4);
+                JsonNode target = mutate(random, source.deepCopy(), 4);
+
+                JsonNode expected = new JsonDiff(flags, 1).diff(source, target);
+                JsonNode actual = new JsonDiff(flags, 1, pool, 4).diff(source, target);
+
+                assertEquals(flags.toString(), expected.toString(), actual.toString());
+            }
+        }
+    }
+
+    @Test
+    public void parallelDifferMatchesSequentialDifferOnLargeDocuments() {
+        Random random = new Random(19);
+        ObjectNode source = MAPPER.createObjectNode();
+        for (int i = 0; i < 2000; i++) {
+            source.set("key" + i, randomDocument(random, 3));
+        }
+        JsonNode target = mutate(random, source.deepCopy(), 3);
+
+        JsonDiffer sequential = JsonDiffer.defaults();
+        JsonDiffer parallel = sequential.withParallelism(pool);
+
+        assertEquals(sequential.diff(source, target).toString(), parallel.diff(source, target).toString());
+        assertSame(parallel, parallel.withParallelism(pool));
+    }
+
+    @Test
+    public void parallelDiffRunsFromWithinThePool() throws Exception {
+        Random random = new Random(23);
+        final JsonNode source = randomDocument(random, 4);
+        final JsonNode target = mutate(random, source.deepCopy(), 4);
+        final EnumSet<DiffFlags> flags = DiffFlags.defaults();
+
+        JsonNode actual = pool.submit(new Callable<JsonNode>() {
+            @Override
+            public JsonNode call() {
+                return new JsonDiff(flags, 1, pool, 4).diff(source, target);
+            }
+        }).get();
+
+        assertEquals(new JsonDiff(flags, 1).diff(source, target).toString(), actual.toString());
+    }
+
+    private static JsonNode randomDocument(Random random, int depth) {
+        int kind = depth <= 0 ? 0 : 1 + random.nextInt(2);
+        if (kind == 1) {
+            ObjectNode node = MAPPER.createObjectNode();
+            int size = 2 + random.nextInt(6);
+            for (int i = 0; i < size; i++) {
+                node.set("f" + random.nextInt(10), randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        if (kind == 2) {
+            ArrayNode node = MAPPER.createArrayNode();
+            int size = 2 + random.nextInt(6);
+            for (int i = 0; i < size; i++) {
+                node.add(randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        return MAPPER.getNodeFactory().numberNode(random.nextInt(5));
+    }
+
+    private static JsonNode mutate(Random random, JsonNode node, int depth) {
+        if (node.isObject()) {
+            ObjectNode object = (ObjectNode) node;
+            if (random.nextInt(4) == 0) object.set("f" + random.nextInt(12), randomDocument(random, depth - 1));
+            if (random.nextInt(4) == 0) object.remove("f" + random.nextInt(10));
+            List<String> names = new ArrayList<String>();
+            Iterator<String> fieldNames = object.fieldNames();
+            while (fieldNames.hasNext()) {
+                names.add(fieldNames.next());
+            }
+            for (String name : names) {
+                object.set(name, mutate(random, object.get(name), depth - 1));
+            }
+            return object;
+        }
+        if (node.isArray()) {
+            ArrayNode array = (ArrayNode) node;
+            if (random.nextInt(4) == 0) array.insert(random.nextInt(array.size() + 1), randomDocument(random, depth - 1));
+            if (random.nextInt(4) == 0 && array.size() > 0) array.remove(random.nextInt(array.size()));
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, mutate(random, array.get(i), depth - 1));
+            }
+            return array;
+        }
+        return random.nextInt(3) == 0 ? MAPPER.getNodeFactory().numberNode(random.nextInt(5)) : node;
+    }
+}
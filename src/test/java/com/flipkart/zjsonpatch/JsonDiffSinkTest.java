@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class JsonDiffSinkTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final List<EnumSet<DiffFlags>> FLAG_SETS = Arrays.asList(
+            DiffFlags.defaults(),
+            EnumSet.noneOf(DiffFlags.class),
+            DiffFlags.dontNormalizeOpIntoMoveAndCopy(),
+            EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION, DiffFlags.OMIT_COPY_OPERATION, DiffFlags.EMIT_TEST_OPERATIONS),
+            EnumSet.of(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE, DiffFlags.ADD_EXPLICIT_REMOVE_ADD_ON_REPLACE),
+            EnumSet.of(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE_AS_VALUE, DiffFlags.OMIT_COPY_OPERATION));
+
+    @Test
+    public void generatorOutputMatchesPatchDocument() throws IOException {
+        Random random = new Random(3);
+        for (EnumSet<DiffFlags> flags : FLAG_SETS) {
+            JsonDiffer differ = JsonDiffer.of(flags);
+            for (int i = 0; i < 200; i++) {
+                JsonNode source = randomDocument(random, 3);
+                JsonNode target = randomDocument(random, 3);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                differ.diff(source, target, out);
+
+                String expected = MAPPER.writeValueAsString(JsonDiff.asJson(source, target, flags));
+                assertEquals(flags.toString(), expected, out.toString("UTF-8"));
+            }
+        }
+    }
+
+    @Test
+    public void sinkReceivesEveryOperationInOrder() {
+        Random random = new Random(5);
+        for (EnumSet<DiffFlags> flags : FLAG_SETS) {
+            JsonDiffer differ = JsonDiffer.of(flags);
+            for (int i = 0; i < 200; i++) {
+                JsonNode source = randomDocument(random, 3);
+                JsonNode target = randomDocument(random, 3);
+
+                CollectingSink sink = new CollectingSink();
+                differ.diff(source, target, sink);
+
+                assertEquals(flags.toString(), JsonDiff.asJson(source, target, flags), sink.patch);
+            }
+        }
+    }
+
+    @Test
+    public void fullyStreamingDiffReachesSinkBeforeComparisonEnds() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": 1, \"b\": [1, 2, 3]}");
+        JsonNode target = MAPPER.readTree("{\"a\": 2, \"b\": [1, 3, 4]}");
+        final RuntimeException stop = new RuntimeException("stop");
+        JsonDiffer differ = JsonDiffer.of(DiffFlags.dontNormalizeOpIntoMoveAndCopy());
+
+        try {
+            differ.diff(source, target, new CollectingSink() {
+                @Override
+                public void replace(String path, JsonNode value, JsonNode fromValue) {
+                    throw stop;
+                }
+            });
+            fail("sink was not invoked");
+        } catch (RuntimeException e) {
+            assertSame(stop, e);
+        }
+
+        // The pooled engine must be left usable after a failing sink
+        assertEquals(JsonDiff.asJson(source, target, DiffFlags.dontNormalizeOpIntoMoveAndCopy()),
+                differ.diff(source, target));
+    }
+
+    @Test
+    public void sinkMayDiffReentrantly() throws IOException {
+        final JsonNode source = MAPPER.readTree("{\"a\": {\"x\": 1}}");
+        final JsonNode target = MAPPER.readTree("{\"a\": {\"x\": 2}}");
+        final JsonDiffer differ = JsonDiffer.of(DiffFlags.dontNormalizeOpIntoMoveAndCopy());
+        final JsonNode expected = differ.diff(source, target);
+
+        CollectingSink sink = new CollectingSink() {
+            @Override
+            public void replace(String path, JsonNode value, JsonNode fromValue) {
+                assertEquals(expected, differ.diff(source, target));
+                super.replace(path, value, fromValue);
+            }
+        };
+        differ.diff(source, target, sink);
+
+        assertEquals(expected, sink.patch);
+    }
+
+    private static JsonNode randomDocument(Random random, int depth) {
+        int kind = depth == 0 ? 0 : random.nextInt(4);
+        if (kind == 1) {
+            ObjectNode node = MAPPER.createObjectNode();
+            for (int i = 0; i < 4; i++) {
+                if (random.nextBoolean())
+                    node.set("f" + i, randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        if (kind == 2) {
+            ArrayNode node = MAPPER.createArrayNode();
+            int size = random.nextInt(6);
+            for (int i = 0; i < size; i++) {
+                node.add(randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        return MAPPER.getNodeFactory().numberNode(random.nextInt(4));
+    }
+
+    /** Rebuilds the patch document from the sink callbacks. */
+    private static class CollectingSink implements DiffSink {
+        final ArrayNode patch = MAPPER.createArrayNode();
+
+        private ObjectNode op(String op, String path) {
+            return patch.addObject().put(Constants.OP, op).put(Constants.PATH, path);
+        }
+
+        @Override
+        public void add(String path, JsonNode value) {
+            op("add", path).set(Constants.VALUE, value);
+        }
+
+        @Override
+        public void remove(String path, JsonNode value) {
+            ObjectNode node = op("remove", path);
+            if (value != null) node.set(Constants.VALUE, value);
+        }
+
+        @Override
+        public void replace(String path, JsonNode value, JsonNode fromValue) {
+            ObjectNode node = op("replace", path);
+            node.set(Constants.VALUE, value);
+            if (fromValue != null) node.set(Constants.FROM_VALUE, fromValue);
+        }
+
+        @Override
+        public void move(String from, String path) {
+            op("move", path).put(Constants.FROM, from);
+        }
+
+        @Override
+        public void copy(String from, String path) {
+            op("copy", path).put(Constants.FROM, from);
+        }
+
+        @Override
+        public void test(String path, JsonNode value) {
+            op("test", path).set(Constants.VALUE, value);
+        }
+    }
+}
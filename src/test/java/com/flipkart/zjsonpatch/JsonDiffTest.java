@@ -226,12 +226,12 @@ public class JsonDiffTest {
                 {
                         "{\"_id\":\"_id\",\"fields\":[{\"dataFormat\":\"quantity\",\"name\":\"soundPeak\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f1\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak3\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f3\"}]}",
                         "{\"_id\":\"_id\",\"fields\":[{\"dataFormat\":\"quantity\",\"name\":\"soundPeak\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f1\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak3\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f3\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak5\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f5\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak4\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f4\"}]}",
-                        "[{\"op\":\"remove\",\"path\":\"/fields/1\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"}},{\"op\":\"add\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak4\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f4\"}},{\"op\":\"add\",\"path\":\"/fields/2\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak5\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f5\"}}]"
+                        "[{\"op\":\"remove\",\"path\":\"/fields/1\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"}},{\"op\":\"add\",\"path\":\"/fields/2\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak5\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f5\"}},{\"op\":\"add\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak4\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f4\"}}]"
                 },
                 {
                         "{\"_id\":\"_id\",\"fields\":[{\"dataFormat\":\"quantity\",\"name\":\"soundPeak\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f1\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak3\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f3\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak7\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f7\"}]}",
                         "{\"_id\":\"_id\",\"fields\":[{\"dataFormat\":\"quantity\",\"name\":\"soundPeak\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f1\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak3\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f3\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak7\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f7\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak5\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f5\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak4\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f4\"}]}",
-                        "[{\"op\":\"remove\",\"path\":\"/fields/1\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"}},{\"op\":\"add\",\"path\":\"/fields/4\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak4\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f4\"}},{\"op\":\"add\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak5\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f5\"}}]"
+                        "[{\"op\":\"remove\",\"path\":\"/fields/1\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"}},{\"op\":\"add\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak5\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f5\"}},{\"op\":\"add\",\"path\":\"/fields/4\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak4\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f4\"}}]"
                 },
                 {
                         "{\"_id\":\"02bcac93-69ac-439f-9b9a-57dafc544128\",\"parent_id\":\"1db95205-4ab8-4bf5-8bc5-3cdf44545b9b\",\"glas_type\":\"Entry\",\"created_at\":\"2020-11-26T09:33:29Z\",\"last_edited\":\"2020-11-26T09:33:29Z\",\"glas_owner\":\"5f2e4d31-d51f-4d7a-9ef7-02be94ed94dd\",\"glas_owner_email\":\"test2@glas-data.com\",\"recordUuid\":\"dc595918-0618-47d9-b646-545eb88ce220\",\"dataStreamUuid\":\"82ac5522-3289-4d9b-a388-2badfde6c0b9\",\"date\":\"2020-11-26T09:33:29Z\",\"values\":{\"6d4aa503-4d7f-4373-a563-417edd8681f1\":64}}",
@@ -251,12 +251,12 @@ public class JsonDiffTest {
                 {
                         "{\"_id\":\"_id\",\"fields\":[{\"dataFormat\":\"quantity\",\"name\":\"soundPeak\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f1\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak3\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f3\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak7\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f7\"}]}",
                         "{\"_id\":\"_id\",\"fields\":[{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f1\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak8\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f3\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak20\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f20\"}]}",
-                        "[{\"op\":\"remove\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak7\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f7\"}},{\"op\":\"replace\",\"value\":\"soundPeak3\",\"path\":\"/fields/2/name\"},{\"op\":\"add\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak20\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f20\"}}]"
+                        "[{\"op\":\"replace\",\"value\":\"soundPeak3\",\"path\":\"/fields/2/name\"},{\"op\":\"remove\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak7\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f7\"}},{\"op\":\"add\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak20\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f20\"}}]"
                 },
                 {
                         "{\"_id\":\"_id\",\"fields\":[{\"dataFormat\":\"quantity\",\"name\":\"soundPeak3\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f3\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f1\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak7\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f7\"}]}",
                         "{\"_id\":\"_id\",\"fields\":[{\"dataFormat\":\"quantity\",\"name\":\"soundPeak2\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f2\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f1\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak8\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f3\"},{\"dataFormat\":\"quantity\",\"name\":\"soundPeak20\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f20\"}]}",
-                        "[{\"op\":\"remove\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak7\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f7\"}},{\"op\":\"replace\",\"value\":\"soundPeak3\",\"path\":\"/fields/0/name\"},{\"op\":\"add\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak20\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f20\"}}]"
+                        "[{\"op\":\"replace\",\"value\":\"soundPeak3\",\"path\":\"/fields/0/name\"},{\"op\":\"remove\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak7\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f7\"}},{\"op\":\"add\",\"path\":\"/fields/3\",\"value\":{\"dataFormat\":\"quantity\",\"name\":\"soundPeak20\",\"uuid\":\"6d4aa503-4d7f-4373-a563-417edd8681f20\"}}]"
                 },
                 {
                         "{\"values\":{\"344aa235-4d7f-4373-a563-417edd8685d2\":20.0,\"6d4aa503-4d7f-4373-a563-417edd8681f1\":65.4215557891}}",
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonDiffTokenStreamTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final List<EnumSet<DiffFlags>> FLAG_SETS = Arrays.asList(
+            DiffFlags.defaults(),
+            EnumSet.noneOf(DiffFlags.class),
+            DiffFlags.dontNormalizeOpIntoMoveAndCopy(),
+            EnumSet.of(DiffFlags.EMIT_TEST_OPERATIONS, DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE),
+            EnumSet.of(DiffFlags.TREAT_ARRAYS_AS_SETS));
+
+    @Test
+    public void tokenDiffMatchesTreeDiffWithoutCopies() throws IOException {
+        Random random = new Random(29);
+        for (EnumSet<DiffFlags> flags : FLAG_SETS) {
+            EnumSet<DiffFlags> treeFlags = flags.clone();
+            treeFlags.add(DiffFlags.OMIT_COPY_OPERATION);
+            for (int i = 0; i < 300; i++) {
+                JsonNode source = randomDocument(random, 4);
+                JsonNode target = mutate(random, source.deepCopy(), 4);
+
+                JsonNode expected = JsonDiff.asJson(source, target, treeFlags);
+                JsonNode actual = JsonDiffer.of(flags).diff(parser(source), parser(target));
+
+                assertEquals(flags + " " + source + " -> " + target, expected.toString(), actual.toString());
+            }
+        }
+    }
+
+    @Test
+    public void arraysAreDiffedPastTheirCommonPrefix() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": [1, {\"b\": 2}, 3, 4, 5], \"c\": 1}");
+        JsonNode target = MAPPER.readTree("{\"a\": [1, {\"b\": 2}, 3, 5, 6], \"c\": 1}");
+
+        JsonNode diff = JsonDiffer.defaults().diff(parser(source), parser(target));
+
+        assertEquals(MAPPER.readTree("[{\"op\":\"remove\",\"path\":\"/a/3\"},{\"op\":\"add\",\"path\":\"/a/4\",\"value\":6}]"), diff);
+    }
+
+    @Test
+    public void longArraysAreComparedWithinBoundedWindows() throws IOException {
+        ArrayNode source = MAPPER.createArrayNode();
+        ArrayNode target = MAPPER.createArrayNode();
+        for (int i = 0; i < 20000; i++) {
+            ObjectNode element = MAPPER.createObjectNode().put("id", i);
+            source.add(element);
+            if (i % 997 == 0)
+                target.add(MAPPER.createObjectNode().put("id", -i));
+            if (i % 1009 != 0)
+                target.add(i % 503 == 0 ? MAPPER.createObjectNode().put("id", i).put("changed", true) : element);
+        }
+        EnumSet<DiffFlags> flags = DiffFlags.dontNormalizeOpIntoMoveAndCopy();
+        JsonDiff engine = new JsonDiff(flags, 1);
+        TokenDiff tokens = new TokenDiff(engine, flags, 32);
+        DiffWriter.ToArrayNode out = new DiffWriter.ToArrayNode(flags);
+
+        engine.diff(tokens, parser(source), parser(target), out);
+
+        assertEquals(target, JsonPatch.apply(out.getPatch(), source));
+        assertTrue("held " + tokens.peakBuffered() + " elements", tokens.peakBuffered() <= 2 * 32);
+    }
+
+    @Test
+    public void windowedDiffTurnsSourceIntoTarget() throws IOException {
+        Random random = new Random(37);
+        List<EnumSet<DiffFlags>> flagSets = Arrays.asList(
+                DiffFlags.defaults(),
+                DiffFlags.dontNormalizeOpIntoMoveAndCopy(),
+                EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION, DiffFlags.OMIT_COPY_OPERATION,
+                        DiffFlags.EMIT_TEST_OPERATIONS, DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE));
+        for (EnumSet<DiffFlags> flags : flagSets) {
+            for (int i = 0; i < 200; i++) {
+                ArrayNode source = MAPPER.createArrayNode();
+                int size = random.nextInt(60);
+                for (int k = 0; k < size; k++) {
+                    source.add(random.nextInt(4) == 0 ? randomDocument(random, 2) : MAPPER.getNodeFactory().numberNode(random.nextInt(6)));
+                }
+                ArrayNode target = source.deepCopy();
+                for (int edits = random.nextInt(12); edits > 0; edits--) {
+                    int index = random.nextInt(target.size() + 1);
+                    if (random.nextBoolean() && index < target.size())
+                        target.remove(index);
+                    else
+                        target.insert(index, random.nextInt(6));
+                }
+                JsonDiff engine = new JsonDiff(flags, 1);
+                TokenDiff tokens = new TokenDiff(engine, flags, 8 + random.nextInt(8));
+                DiffWriter.ToArrayNode out = new DiffWriter.ToArrayNode(flags);
+
+                engine.diff(tokens, parser(source), parser(target), out);
+
+                assertEquals(flags + " " + source + " -> " + target, target, JsonPatch.apply(out.getPatch(), source));
+            }
+        }
+    }
+
+    @Test
+    public void fieldsAfterDivergingOrderAreComparedAsObjects() throws IOException {
+        JsonNode diff = JsonDiffer.defaults().diff(
+                stream("{\"a\": {\"x\": 1}, \"b\": 2, \"c\": [1], \"d\": 4}"),
+                stream("{\"a\": {\"x\": 2}, \"c\": [1, 2], \"b\": 2, \"e\": 5}"));
+
+        assertEquals(MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/a/x\",\"value\":2}," +
+                "{\"op\":\"add\",\"path\":\"/c/1\",\"value\":2}," +
+                "{\"op\":\"remove\",\"path\":\"/d\"}," +
+                "{\"op\":\"add\",\"path\":\"/e\",\"value\":5}]"), diff);
+    }
+
+    @Test
+    public void emptyInputStandsForMissingDocument() throws IOException {
+        JsonNode diff = JsonDiffer.defaults().diff(stream(""), stream("{\"a\": 1}"));
+
+        assertEquals(MAPPER.readTree("[{\"op\":\"add\",\"path\":\"\",\"value\":{\"a\":1}}]"), diff);
+    }
+
+    private static JsonParser parser(JsonNode node) throws IOException {
+        return MAPPER.getFactory().createParser(MAPPER.writeValueAsBytes(node));
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonNode randomDocument(Random random, int depth) {
+        int kind = depth <= 0 ? 0 : random.nextInt(3);
+        if (kind == 1) {
+            ObjectNode node = MAPPER.createObjectNode();
+            int size = random.nextInt(6);
+            for (int i = 0; i < size; i++) {
+                node.set("f" + random.nextInt(10), randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        if (kind == 2) {
+            ArrayNode node = MAPPER.createArrayNode();
+            int size = random.nextInt(6);
+            for (int i = 0; i < size; i++) {
+                node.add(randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        return random.nextInt(8) == 0 ? MAPPER.getNodeFactory().nullNode()
+                : MAPPER.getNodeFactory().numberNode(random.nextInt(5));
+    }
+
+    private static JsonNode mutate(Random random, JsonNode node, int depth) {
+        if (node.isObject()) {
+            ObjectNode object = (ObjectNode) node;
+            List<String> names = new ArrayList<String>();
+            Iterator<String> fieldNames = object.fieldNames();
+            while (fieldNames.hasNext()) {
+                names.add(fieldNames.next());
+            }
+            if (random.nextInt(4) == 0 && !names.isEmpty()) {
+                // Move a field to the end
+                String name = names.get(random.nextInt(names.size()));
+                object.set(name, object.remove(name));
+            }
+            if (random.nextInt(4) == 0) object.set("f" + random.nextInt(12), randomDocument(random, depth - 1));
+            if (random.nextInt(4) == 0) object.remove("f" + random.nextInt(10));
+            for (String name : names) {
+                if (object.has(name))
+                    object.set(name, mutate(random, object.get(name), depth - 1));
+            }
+            return object;
+        }
+        if (node.isArray()) {
+            ArrayNode array = (ArrayNode) node;
+            if (random.nextInt(4) == 0) array.insert(random.nextInt(array.size() + 1), randomDocument(random, depth - 1));
+            if (random.nextInt(4) == 0 && array.size() > 0) array.remove(random.nextInt(array.size()));
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, mutate(random, array.get(i), depth - 1));
+            }
+            return array;
+        }
+        return random.nextInt(4) == 0 ? randomDocument(random, depth) : node;
+    }
+}
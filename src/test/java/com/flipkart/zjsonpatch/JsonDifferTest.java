@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class JsonDifferTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void differsAreSharedPerFlags() {
+        EnumSet<DiffFlags> flags = EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION);
+        JsonDiffer differ = JsonDiffer.of(flags);
+        flags.add(DiffFlags.OMIT_COPY_OPERATION);
+
+        assertSame(differ, JsonDiffer.of(EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION)));
+        assertEquals(EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION), differ.getFlags());
+        assertSame(JsonDiffer.defaults(), JsonDiffer.defaults().withMinCopySize(1));
+        assertNotSame(differ, differ.withMinCopySize(3));
+        assertEquals(3, differ.withMinCopySize(3).getMinCopySize());
+    }
+
+    @Test
+    public void onlyTheDefaultMinimumCopySizeIsShared() throws IOException {
+        JsonDiffer shared = JsonDiffer.of(EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION));
+        JsonDiffer differ = shared.withMinCopySize(3);
+
+        assertNotSame(differ, shared.withMinCopySize(3));
+        assertSame(shared, differ.withMinCopySize(1));
+        assertSame(shared, shared.withParallelism(ForkJoinPool.commonPool()).withParallelism(null));
+        assertSame(JsonDiffer.defaults(), JsonDiffer.of(DiffFlags.defaults()));
+
+        JsonNode source = MAPPER.readTree("{\"a\": {\"b\": 1, \"f\": 2}, \"c\": [1]}");
+        JsonNode target = MAPPER.readTree("{\"a\": {\"b\": 1, \"f\": 2}, \"c\": [1], \"d\": {\"b\": 1, \"f\": 2}, \"e\": [1]}");
+        assertEquals("[{\"op\":\"copy\",\"from\":\"/a\",\"path\":\"/d\"},{\"op\":\"add\",\"path\":\"/e\",\"value\":[1]}]",
+                differ.diff(source, target).toString());
+        assertEquals(differ.diff(source, target),
+                JsonDiff.asJson(source, target, EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION), 3));
+    }
+
+    @Test
+    public void pooledEngineIsReusableAfterLargeDiff() {
+        ArrayNode source = MAPPER.createArrayNode();
+        ArrayNode target = MAPPER.createArrayNode();
+        for (int i = 0; i < 70000; i++) {
+            source.add(i);
+            target.add(i % 7 == 0 ? -i : i);
+        }
+        JsonDiffer differ = JsonDiffer.of(EnumSet.of(DiffFlags.OMIT_MOVE_OPERATION, DiffFlags.OMIT_COPY_OPERATION));
+
+        assertEquals(target, JsonPatch.apply(differ.diff(source, target), source));
+        assertEquals(source, JsonPatch.apply(differ.diff(target, source), target));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minimumCopySizeMustBePositive() {
+        JsonDiffer.defaults().withMinCopySize(0);
+    }
+
+    @Test
+    public void reusedDifferMatchesFreshDiffs() throws IOException {
+        JsonDiffer differ = JsonDiffer.defaults();
+        JsonNode first = MAPPER.readTree("{\"a\": [1, 2, 3], \"b\": {\"c\": true}}");
+        JsonNode second = MAPPER.readTree("{\"a\": [3, 1, 2], \"d\": {\"c\": true}}");
+
+        JsonNode expected = new JsonDiff(DiffFlags.defaults(), JsonDiff.DEFAULT_MIN_COPY_SIZE).diff(first, second);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, differ.diff(first, second));
+            assertEquals(second, JsonPatch.apply(differ.diff(first, second), first));
+            assertEquals(first, JsonPatch.apply(differ.diff(second, first), second));
+        }
+    }
+
+    @Test
+    public void concurrentDiffsApplyCleanly() throws Exception {
+        final JsonDiffer differ = JsonDiffer.defaults();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 8; t++) {
+                final long seed = t;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 200; i++) {
+                            JsonNode source = randomDocument(random);
+                            JsonNode target = randomDocument(random);
+                            JsonNode patch = differ.diff(source, target);
+                            assertEquals(patch.toString(), target, JsonPatch.apply(patch, source));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static JsonNode randomDocument(Random random) {
+        ObjectNode node = MAPPER.createObjectNode();
+        for (int i = 0; i < 4; i++) {
+            if (random.nextBoolean())
+                node.put("f" + i, random.nextInt(3));
+        }
+        ArrayNode array = node.putArray("items");
+        int size = random.nextInt(8);
+        for (int i = 0; i < size; i++) {
+            array.add(random.nextInt(5));
+        }
+        return node;
+    }
+}
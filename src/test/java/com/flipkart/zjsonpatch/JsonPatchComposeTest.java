@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonPatchComposeTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void changesToAddedValuesAreAppliedToThem() throws IOException {
+        JsonNode first = MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/list\",\"value\":[1,2,3]}]");
+        JsonNode second = MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/list/0\",\"value\":0}," +
+                "{\"op\":\"remove\",\"path\":\"/list/2\"}]");
+        JsonNode third = MAPPER.readTree("[{\"op\":\"test\",\"path\":\"/list/2\",\"value\":3}]");
+
+        assertEquals(MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/list\",\"value\":[0,1,3]}]"),
+                JsonPatch.compose(first, second, third));
+    }
+
+    @Test
+    public void operationsAreRebasedThroughMoves() throws IOException {
+        JsonNode first = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/a/x\",\"value\":1}]");
+        JsonNode second = MAPPER.readTree("[{\"op\":\"move\",\"from\":\"/a\",\"path\":\"/b\"}]");
+        JsonNode third = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/b/x\",\"value\":2}]");
+
+        JsonNode composed = JsonPatch.compose(first, second, third);
+
+        assertEquals(MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/a/x\",\"value\":2}," +
+                "{\"op\":\"move\",\"from\":\"/a\",\"path\":\"/b\"}]"), composed);
+        assertEquals(MAPPER.readTree("{\"b\": {\"x\": 2}}"), JsonPatch.apply(composed, MAPPER.readTree("{\"a\": {\"x\": 0}}")));
+    }
+
+    @Test
+    public void composedRandomChainsHaveTheSameEffect() {
+        Random random = new Random(23);
+        int folded = 0;
+        for (int i = 0; i < 1000; i++) {
+            JsonNode source = JsonPatchOptimizeTest.randomValue(random, 3);
+            JsonNode current = source;
+            List<JsonNode> chain = new ArrayList<JsonNode>();
+            int size = 0;
+            for (int j = 0; j < 5; j++) {
+                ArrayNode patch = MAPPER.createArrayNode();
+                for (int k = 0; k < 4; k++) {
+                    ObjectNode op = JsonPatchOptimizeTest.randomOperation(random, current);
+                    ArrayNode single = MAPPER.createArrayNode();
+                    single.add(op);
+                    try {
+                        current = JsonPatch.apply(single, current);
+                        patch.add(op);
+                    } catch (RuntimeException e) {
+                        // Not applicable to the current document, try another one
+                    }
+                }
+                chain.add(patch);
+                size += patch.size();
+            }
+
+            JsonNode composed = JsonPatch.compose(chain, CompatibilityFlags.defaults());
+
+            assertEquals(chain + " -> " + composed, current, JsonPatch.apply(composed, source));
+            assertTrue(composed.size() <= size);
+            folded += size - composed.size();
+        }
+        assertTrue(folded > 1000);
+    }
+}
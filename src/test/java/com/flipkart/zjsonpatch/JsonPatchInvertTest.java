@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class JsonPatchInvertTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void diffWithInverseRevertsTheDiff() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": [1, 2, 3], \"b\": {\"c\": \"x\"}, \"d\": 1}");
+        JsonNode target = MAPPER.readTree("{\"a\": [3, 1, 2, 4], \"b\": {\"c\": \"y\"}, \"e\": 1}");
+
+        InvertiblePatch patches = JsonDiffer.defaults().diffWithInverse(source, target);
+
+        assertEquals(JsonDiff.asJson(source, target), patches.getPatch());
+        assertEquals(source, JsonPatch.apply(patches.getInverse(), target));
+    }
+
+    @Test
+    public void inverseRestoresOverwrittenValues() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": [1, 2], \"b\": {\"c\": 1}, \"d\": \"old\"}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/a/-\",\"value\":3}," +
+                "{\"op\":\"add\",\"path\":\"/d\",\"value\":\"new\"}," +
+                "{\"op\":\"move\",\"from\":\"/b\",\"path\":\"/d\"}," +
+                "{\"op\":\"copy\",\"from\":\"/a\",\"path\":\"/e\"}," +
+                "{\"op\":\"remove\",\"path\":\"/a/0\"}]");
+        String before = source.toString();
+
+        JsonNode inverse = JsonPatch.invert(patch, source);
+
+        assertEquals(before, source.toString());
+        assertEquals(MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/a/0\",\"value\":1}," +
+                "{\"op\":\"remove\",\"path\":\"/e\"}," +
+                "{\"op\":\"move\",\"from\":\"/d\",\"path\":\"/b\"}," +
+                "{\"op\":\"add\",\"path\":\"/d\",\"value\":\"new\"}," +
+                "{\"op\":\"replace\",\"path\":\"/d\",\"value\":\"old\"}," +
+                "{\"op\":\"remove\",\"path\":\"/a/2\"}]"), inverse);
+        assertEquals(source, JsonPatch.apply(inverse, JsonPatch.apply(patch, source)));
+    }
+
+    @Test
+    public void inversesOfRandomPatchesRevertThem() {
+        Random random = new Random(29);
+        for (int i = 0; i < 2000; i++) {
+            JsonNode source = JsonPatchOptimizeTest.randomValue(random, 3);
+            ArrayNode patch = MAPPER.createArrayNode();
+            JsonNode current = source;
+            for (int j = 0; j < 8; j++) {
+                ObjectNode op = JsonPatchOptimizeTest.randomOperation(random, current);
+                ArrayNode single = MAPPER.createArrayNode();
+                single.add(op);
+                try {
+                    current = JsonPatch.apply(single, current);
+                    patch.add(op);
+                } catch (RuntimeException e) {
+                    // Not applicable to the current document, try another one
+                }
+            }
+
+            JsonNode inverse = JsonPatch.invert(patch, source);
+
+            assertEquals(patch + " -> " + inverse, source, JsonPatch.apply(inverse, current));
+        }
+    }
+
+    @Test
+    public void moveIntoAnElementOfTheSourceArrayRestoresTheOverwrittenField() throws IOException {
+        JsonNode source = MAPPER.readTree("[0, [], {\"0\": {\"c\": 2}}]");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"move\",\"from\":\"/1\",\"path\":\"/1/0\"}]");
+
+        JsonNode inverse = JsonPatch.invert(patch, source);
+
+        assertEquals(MAPPER.readTree("[0, {\"0\": []}]"), JsonPatch.apply(patch, source));
+        assertEquals(source, JsonPatch.apply(inverse, JsonPatch.apply(patch, source)));
+    }
+
+    @Test
+    public void inverseSharesUnmodifiedSourceValues() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": {\"b\": [1, 2]}, \"c\": 1}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"remove\",\"path\":\"/a\"}]");
+
+        JsonNode inverse = JsonPatch.invert(patch, source);
+
+        assertSame(source.get("a"), inverse.get(0).get("value"));
+    }
+
+    @Test
+    public void inversesOfRandomMovesRevertThem() {
+        Random random = new Random(37);
+        for (int i = 0; i < 5000; i++) {
+            JsonNode source = randomIndexedDocument(random, 3);
+            ArrayNode patch = MAPPER.createArrayNode();
+            JsonNode current = source;
+            for (int j = 0; j < 4; j++) {
+                List<String> paths = new ArrayList<String>();
+                collectPaths(current, "", paths);
+                ObjectNode op = MAPPER.createObjectNode();
+                op.put("op", random.nextInt(4) == 0 ? "copy" : "move");
+                op.put("from", paths.get(random.nextInt(paths.size())));
+                op.put("path", paths.get(random.nextInt(paths.size())));
+                ArrayNode single = MAPPER.createArrayNode();
+                single.add(op);
+                try {
+                    current = JsonPatch.apply(single, current);
+                    patch.add(op);
+                } catch (RuntimeException e) {
+                    // Not applicable to the current document, try another one
+                }
+            }
+
+            JsonNode inverse = JsonPatch.invert(patch, source);
+
+            assertEquals(patch + " -> " + inverse, source, JsonPatch.apply(inverse, JsonPatch.apply(patch, source)));
+        }
+    }
+
+    @Test
+    public void diffInversesRevertRandomDiffs() {
+        Random random = new Random(31);
+        JsonDiffer differ = JsonDiffer.of(EnumSet.of(DiffFlags.ADD_ORIGINAL_VALUE_ON_REPLACE,
+                DiffFlags.ADD_EXPLICIT_REMOVE_ADD_ON_REPLACE));
+        for (int i = 0; i < 2000; i++) {
+            JsonNode source = MAPPER.createObjectNode().set("doc", randomDocument(random, 3));
+            JsonNode target = MAPPER.createObjectNode().set("doc", randomDocument(random, 3));
+
+            InvertiblePatch patches = (i % 2 == 0 ? JsonDiffer.defaults() : differ).diffWithInverse(source, target);
+
+            assertEquals(target, JsonPatch.apply(patches.getPatch(), source));
+            assertEquals(patches.getInverse().toString(), source, JsonPatch.apply(patches.getInverse(), target));
+        }
+    }
+
+    // Arrays and objects whose fields look like indexes, so that paths into either kind of container collide
+    private static JsonNode randomIndexedDocument(Random random, int depth) {
+        int kind = depth <= 0 ? 0 : random.nextInt(3);
+        if (kind == 0)
+            return MAPPER.getNodeFactory().numberNode(random.nextInt(3));
+        int size = random.nextInt(4);
+        if (kind == 1) {
+            ObjectNode node = MAPPER.createObjectNode();
+            for (int i = 0; i < size; i++) {
+                node.set(String.valueOf(random.nextInt(3)), randomIndexedDocument(random, depth - 1));
+            }
+            return node;
+        }
+        ArrayNode node = MAPPER.createArrayNode();
+        for (int i = 0; i < size; i++) {
+            node.add(randomIndexedDocument(random, depth - 1));
+        }
+        return node;
+    }
+
+    // Paths of every value in the document, and of the positions values can be added at
+    private static void collectPaths(JsonNode node, String path, List<String> paths) {
+        paths.add(path);
+        if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++) {
+                collectPaths(node.get(i), path + "/" + i, paths);
+            }
+            paths.add(path + "/" + node.size());
+        } else if (node.isObject()) {
+            Iterator<String> fields = node.fieldNames();
+            while (fields.hasNext()) {
+                String field = fields.next();
+                collectPaths(node.get(field), path + "/" + field, paths);
+            }
+            paths.add(path + "/0");
+        }
+    }
+
+    // Unlike JsonPatchOptimizeTest.randomValue, object fields are never index-like: the diff would take them for array indexes when shifting move paths
+    private static JsonNode randomDocument(Random random, int depth) {
+        int kind = depth <= 0 ? 0 : random.nextInt(3);
+        if (kind == 1) {
+            ObjectNode node = MAPPER.createObjectNode();
+            int size = random.nextInt(4);
+            for (int i = 0; i < size; i++) {
+                node.set(String.valueOf((char) ('a' + random.nextInt(4))), randomDocument(random, depth - 1));
+            }
+            return node;
+        } else if (kind == 2) {
+            ArrayNode node = MAPPER.createArrayNode();
+            int size = random.nextInt(4);
+            for (int i = 0; i < size; i++) {
+                node.add(randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        return MAPPER.getNodeFactory().numberNode(random.nextInt(3));
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonPatchOptimizeTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static void assertOptimized(String patch, String expected) throws IOException {
+        assertEquals(MAPPER.readTree(expected), JsonPatch.optimize(MAPPER.readTree(patch)));
+    }
+
+    @Test
+    public void overriddenFieldOperationsAreFolded() throws IOException {
+        assertOptimized("[{\"op\":\"replace\",\"path\":\"/a\",\"value\":1},{\"op\":\"remove\",\"path\":\"/a\"}]",
+                "[{\"op\":\"remove\",\"path\":\"/a\"}]");
+        assertOptimized("[{\"op\":\"replace\",\"path\":\"/a\",\"value\":1},{\"op\":\"add\",\"path\":\"/b\",\"value\":2}," +
+                        "{\"op\":\"replace\",\"path\":\"/a\",\"value\":3}]",
+                "[{\"op\":\"replace\",\"path\":\"/a\",\"value\":3},{\"op\":\"add\",\"path\":\"/b\",\"value\":2}]");
+        assertOptimized("[{\"op\":\"copy\",\"from\":\"/x\",\"path\":\"/a\"},{\"op\":\"replace\",\"path\":\"/a\",\"value\":1}]",
+                "[{\"op\":\"add\",\"path\":\"/a\",\"value\":1}]");
+        assertOptimized("[{\"op\":\"add\",\"path\":\"/a\",\"value\":1},{\"op\":\"test\",\"path\":\"/a\",\"value\":1}]",
+                "[{\"op\":\"add\",\"path\":\"/a\",\"value\":1}]");
+    }
+
+    @Test
+    public void addedFieldRemovalIsKept() throws IOException {
+        // Without the add, the remove would fail on documents lacking the field
+        String addRemove = "[{\"op\":\"add\",\"path\":\"/a\",\"value\":1},{\"op\":\"remove\",\"path\":\"/a\"}]";
+        assertOptimized(addRemove, addRemove);
+        String copyRemove = "[{\"op\":\"copy\",\"from\":\"/x\",\"path\":\"/a\"},{\"op\":\"remove\",\"path\":\"/a\"}]";
+        assertOptimized(copyRemove, copyRemove);
+    }
+
+    @Test
+    public void arrayIndexesAreNotFoldedAcrossShifts() throws IOException {
+        // Inserting and removing at index 1 cancels out in an array but not in an object
+        String insertRemove = "[{\"op\":\"add\",\"path\":\"/a/1\",\"value\":1},{\"op\":\"remove\",\"path\":\"/a/1\"}]";
+        assertOptimized(insertRemove, insertRemove);
+        // The insert at index 0 shifts the element that is replaced
+        String shifted = "[{\"op\":\"replace\",\"path\":\"/a/1\",\"value\":1},{\"op\":\"add\",\"path\":\"/a/0\",\"value\":0}," +
+                "{\"op\":\"replace\",\"path\":\"/a/1\",\"value\":2}]";
+        assertOptimized(shifted, shifted);
+        assertOptimized("[{\"op\":\"add\",\"path\":\"/a/1\",\"value\":1},{\"op\":\"replace\",\"path\":\"/a/1\",\"value\":2}]",
+                "[{\"op\":\"add\",\"path\":\"/a/1\",\"value\":2}]");
+    }
+
+    @Test
+    public void testsAreNotMovedAcrossRelatedChanges() throws IOException {
+        String patch = "[{\"op\":\"replace\",\"path\":\"/a/b\",\"value\":1},{\"op\":\"test\",\"path\":\"/a\",\"value\":{\"b\":1}}," +
+                "{\"op\":\"replace\",\"path\":\"/a/b\",\"value\":2}]";
+        assertOptimized(patch, patch);
+    }
+
+    @Test
+    public void optimizedRandomPatchesHaveTheSameEffect() {
+        Random random = new Random(17);
+        int folded = 0;
+        for (int i = 0; i < 2000; i++) {
+            JsonNode source = randomValue(random, 3);
+            ArrayNode patch = MAPPER.createArrayNode();
+            JsonNode current = source.deepCopy();
+            for (int j = 0; j < 12; j++) {
+                ObjectNode op = randomOperation(random, current);
+                ArrayNode single = MAPPER.createArrayNode();
+                single.add(op);
+                try {
+                    current = JsonPatch.apply(single, current);
+                    patch.add(op);
+                } catch (RuntimeException e) {
+                    // Not applicable to the current document, try another one
+                }
+            }
+
+            JsonNode optimized = JsonPatch.optimize(patch);
+
+            assertEquals(patch + " -> " + optimized, current, JsonPatch.apply(optimized, source));
+            assertTrue(optimized.size() <= patch.size());
+            folded += patch.size() - optimized.size();
+
+            // The optimized patch must also be fit for the other documents the patch applies to
+            for (int j = 0; j < 8; j++) {
+                JsonNode other = source;
+                for (int k = 0, edits = 1 + random.nextInt(3); k < edits; k++) {
+                    ArrayNode single = MAPPER.createArrayNode();
+                    single.add(randomOperation(random, other));
+                    JsonNode edited = applyStrictly(single, other);
+                    if (edited != null)
+                        other = edited;
+                }
+                JsonNode expected = applyStrictly(patch, other);
+                if (expected != null)
+                    assertEquals(patch + " -> " + optimized + " on " + other, expected, applyStrictly(optimized, other));
+            }
+        }
+        assertTrue(folded > 1000);
+    }
+
+    /**
+     * Applies the patch with RFC 6902 semantics, under which removing a missing field fails, returning
+     * {@code null} if it fails.
+     */
+    private static JsonNode applyStrictly(JsonNode patch, JsonNode document) {
+        JsonNode current = document;
+        for (JsonNode op : patch) {
+            if ("remove".equals(op.get("op").asText())) {
+                try {
+                    JsonPointer.parse(op.get("path").asText()).evaluate(current);
+                } catch (JsonPointerEvaluationException e) {
+                    return null;
+                }
+            }
+            ArrayNode single = MAPPER.createArrayNode();
+            single.add(op);
+            try {
+                current = JsonPatch.apply(single, current);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    static ObjectNode randomOperation(Random random, JsonNode document) {
+        List<String> paths = new ArrayList<String>();
+        collectPaths("", document, paths);
+        String path = paths.get(random.nextInt(paths.size()));
+        ObjectNode op = MAPPER.createObjectNode();
+        switch (random.nextInt(6)) {
+            case 0:
+                op.put("op", "add").put("path", path).set("value", randomValue(random, 1));
+                break;
+            case 1:
+                op.put("op", "remove").put("path", path);
+                break;
+            case 2:
+                op.put("op", "replace").put("path", path).set("value", randomValue(random, 1));
+                break;
+            case 3:
+                op.put("op", "move").put("from", paths.get(random.nextInt(paths.size()))).put("path", path);
+                break;
+            case 4:
+                op.put("op", "copy").put("from", paths.get(random.nextInt(paths.size()))).put("path", path);
+                break;
+            default:
+                JsonNode value;
+                try {
+                    value = JsonPointer.parse(path).evaluate(document);
+                } catch (JsonPointerEvaluationException e) {
+                    value = MAPPER.getNodeFactory().nullNode();
+                }
+                op.put("op", "test").put("path", path).set("value", value);
+        }
+        return op;
+    }
+
+    private static void collectPaths(String path, JsonNode node, List<String> paths) {
+        paths.add(path);
+        if (node.isObject()) {
+            paths.add(path + "/" + (char) ('a' + node.size()));
+            paths.add(path + "/" + node.size());
+            Iterator<String> fields = node.fieldNames();
+            while (fields.hasNext()) {
+                String field = fields.next();
+                collectPaths(path + "/" + field, node.get(field), paths);
+            }
+        } else if (node.isArray()) {
+            paths.add(path + "/-");
+            paths.add(path + "/" + node.size());
+            for (int i = 0; i < node.size(); i++) {
+                collectPaths(path + "/" + i, node.get(i), paths);
+            }
+        }
+    }
+
+    static JsonNode randomValue(Random random, int depth) {
+        int kind = depth <= 0 ? 0 : random.nextInt(3);
+        if (kind == 1) {
+            ObjectNode node = MAPPER.createObjectNode();
+            int size = random.nextInt(4);
+            for (int i = 0; i < size; i++) {
+                String name = random.nextBoolean() ? String.valueOf((char) ('a' + random.nextInt(4))) : String.valueOf(random.nextInt(3));
+                node.set(name, randomValue(random, depth - 1));
+            }
+            return node;
+        }
+        if (kind == 2) {
+            ArrayNode node = MAPPER.createArrayNode();
+            int size = random.nextInt(4);
+            for (int i = 0; i < size; i++) {
+                node.add(randomValue(random, depth - 1));
+            }
+            return node;
+        }
+        return MAPPER.getNodeFactory().numberNode(random.nextInt(3));
+    }
+}
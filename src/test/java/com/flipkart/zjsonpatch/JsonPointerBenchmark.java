@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+/**
+ * Times parsing, index lookup, rendering and token decoding of JSON pointers. Not run by the test suite;
+ * after {@code mvn test-compile}, run it with the test classes and Jackson on the class path:
+ *
+ * <pre>
+ *      java -cp target/classes:target/test-classes:&lt;jackson jars&gt; com.flipkart.zjsonpatch.JsonPointerBenchmark [rounds] [iterations]
+ * </pre>
+ *
+ * The first rounds warm up the JIT; compare the later ones.
+ */
+public final class JsonPointerBenchmark {
+
+    private static final String[] PATHS = {
+            "/orders/17/lines/3/sku", "/a~1b/c~0d/0", "/users/12345/name", "/x/-", "/deep/1/2/3/4/5/field"
+    };
+
+    private JsonPointerBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        // Accumulated so that the JIT can't drop the work
+        long sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                JsonPointer pointer = JsonPointer.parse(PATHS[i % PATHS.length]);
+                for (int k = 0; k < pointer.size(); k++) {
+                    JsonPointer.RefToken token = pointer.get(k);
+                    sink += token.isArrayIndex() ? token.getIndex() : 0;
+                }
+                sink += pointer.toString().length();
+                sink += JsonPointer.RefToken.parse("a~1b" + (i & 7)).getField().length();
+            }
+            System.out.println("round " + round + ": " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        System.out.println("checksum " + sink);
+    }
+}
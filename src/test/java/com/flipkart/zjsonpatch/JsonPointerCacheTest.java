@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class JsonPointerCacheTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void countsHitsAndMisses() {
+        JsonPointerCache cache = new JsonPointerCache(10);
+
+        JsonPointer first = cache.parse("/a/0");
+        assertSame(first, cache.parse("/a/0"));
+        assertEquals(JsonPointer.parse("/a/0"), first);
+        cache.parse("/b");
+
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPointers() {
+        JsonPointerCache cache = new JsonPointerCache(2);
+        JsonPointer a = cache.parse("/a");
+        cache.parse("/b");
+        cache.parse("/a");
+        cache.parse("/c");
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.parse("/a"));
+        cache.parse("/b");
+        assertEquals(4, cache.missCount());
+    }
+
+    @Test
+    public void staysWithinBoundWhenSegmented() {
+        JsonPointerCache cache = new JsonPointerCache(1000);
+        for (int i = 0; i < 5000; i++) {
+            cache.parse("/items/" + i);
+        }
+        assertEquals(1000, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(5000, cache.missCount());
+    }
+
+    @Test
+    public void invalidPathsAreNotCached() {
+        JsonPointerCache cache = new JsonPointerCache(10);
+        try {
+            cache.parse("a");
+            fail("missing leading slash");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void cacheIsUsedOnlyByTheCallsGivenIt() throws IOException {
+        JsonPointerCache cache = new JsonPointerCache(100);
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/status\",\"value\":\"done\"}," +
+                "{\"op\":\"add\",\"path\":\"/items/-\",\"value\":1}]");
+        for (int i = 0; i < 3; i++) {
+            JsonNode result = JsonPatch.apply(patch, MAPPER.readTree("{\"status\": \"new\", \"items\": []}"),
+                    CompatibilityFlags.defaults(), cache);
+            assertEquals(MAPPER.readTree("{\"status\": \"done\", \"items\": [1]}"), result);
+        }
+        JsonPatch.apply(patch, MAPPER.readTree("{\"status\": \"new\", \"items\": []}"));
+        JsonPatch.compile(patch, CompatibilityFlags.defaults(), cache);
+
+        assertEquals(2, cache.missCount());
+        assertEquals(6, cache.hitCount());
+        assertNotSame(JsonPointer.parse("/status"), cache.parse("/status"));
+    }
+
+    @Test
+    public void everyApplyVariantLooksUpPathsInTheCache() throws IOException {
+        JsonPointerCache cache = new JsonPointerCache(100);
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/status\",\"value\":\"done\"}]");
+        JsonNode expected = MAPPER.readTree("{\"status\": \"done\"}");
+
+        assertEquals(expected, JsonPatch.tryApply(patch, source(), CompatibilityFlags.defaults(), cache).getTarget());
+        assertEquals(expected, JsonPatch.applyCopyOnWrite(patch, source(), CompatibilityFlags.defaults(), cache));
+        JsonNode atomic = source();
+        JsonPatch.applyInPlaceAtomically(patch, atomic, CompatibilityFlags.defaults(), cache);
+        assertEquals(expected, atomic);
+        JsonNode inPlace = source();
+        JsonPatch.tryApplyInPlace(patch, inPlace, CompatibilityFlags.defaults(), cache);
+        assertEquals(expected, inPlace);
+        assertEquals(expected, JsonPatch.applyConsuming(patch.deepCopy(), source(), CompatibilityFlags.defaults(), cache));
+        JsonPatch.validate(patch, CompatibilityFlags.defaults(), cache);
+        JsonPatch.invert(patch, source(), CompatibilityFlags.defaults(), cache);
+
+        assertEquals(1, cache.missCount());
+        assertEquals(6, cache.hitCount());
+    }
+
+    private static JsonNode source() throws IOException {
+        return MAPPER.readTree("{\"status\": \"new\"}");
+    }
+
+    @Test
+    public void concurrentLookupsReturnEqualPointers() throws Exception {
+        final JsonPointerCache cache = new JsonPointerCache(300);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < 20000; i++) {
+                            String path = "/a/" + (i % 500);
+                            assertEquals(JsonPointer.parse(path), cache.parse(path));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(80000, cache.hitCount() + cache.missCount());
+    }
+}
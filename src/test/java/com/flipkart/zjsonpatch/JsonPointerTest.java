@@ -56,6 +56,14 @@ public class JsonPointerTest {
         assertEquals(1, parsed.get(1).getIndex());
     }
 
+    @Test
+    public void parsesIndexOutOfIntRangeAsObjectIndirection() {
+        JsonPointer parsed = JsonPointer.parse("/3000000000");
+        assertEquals(1, parsed.size());
+        assertFalse(parsed.get(0).isArrayIndex());
+        assertEquals("3000000000", parsed.get(0).getField());
+    }
+
     @Test
     public void parsesArrayIndirectionsWithLeadingZeroAsObjectIndirections() {
         JsonPointer parsed = JsonPointer.parse("/0123");
@@ -186,5 +194,51 @@ public class JsonPointerTest {
         assertEquals("/ ", JsonPointer.parse("/ ").toString());
         assertEquals("/m~0n", JsonPointer.parse("/m~0n").toString());
     }
-}
 
+    @Test
+    public void appendedPointersMatchParsedOnes() {
+        JsonPointer parent = JsonPointer.ROOT.append("a~b").append(0);
+        JsonPointer appended = parent.append("c/d").append(12).append(JsonPointer.LAST_INDEX);
+        JsonPointer parsed = JsonPointer.parse("/a~0b/0/c~1d/12/-");
+
+        assertEquals(parsed, appended);
+        assertEquals(parsed.hashCode(), appended.hashCode());
+        assertEquals("/a~0b/0/c~1d/12/-", appended.toString());
+        assertEquals(5, appended.size());
+        assertEquals(12, appended.get(3).getIndex());
+        assertEquals("12", appended.get(3).getField());
+        assertSame(parent, appended.getParent().getParent().getParent());
+        assertEquals(parsed.getParent(), appended.getParent());
+        assertTrue(appended.startsWith(parent));
+    }
+
+    @Test
+    public void decodesAndEncodesEscapesInOnePass() {
+        assertEquals("~1", JsonPointer.RefToken.parse("~01").getField());
+        assertEquals("/~", JsonPointer.RefToken.parse("~1~0").getField());
+        assertEquals("a~2~", JsonPointer.RefToken.parse("a~2~").getField());
+        assertEquals("plain", JsonPointer.RefToken.parse("plain").getField());
+        assertEquals("~01", new JsonPointer.RefToken("~1").toString());
+        assertEquals("a~1b~0", new JsonPointer.RefToken("a/b~").toString());
+    }
+
+    @Test
+    public void parsesArrayIndexesWithoutLeadingZeros() {
+        assertEquals(Integer.MAX_VALUE, new JsonPointer.RefToken("2147483647").getIndex());
+        assertFalse(new JsonPointer.RefToken("2147483648").isArrayIndex());
+        assertFalse(new JsonPointer.RefToken("01").isArrayIndex());
+        assertFalse(new JsonPointer.RefToken("1a").isArrayIndex());
+        assertFalse(new JsonPointer.RefToken("").isArrayIndex());
+        assertFalse(new JsonPointer.RefToken("--").isArrayIndex());
+        assertEquals(7, new JsonPointer.RefToken("7").getIndex());
+        assertEquals(JsonPointer.LAST_INDEX, new JsonPointer.RefToken("-").getIndex());
+    }
+
+    @Test
+    public void indexTokensMustNotBeNegative() {
+        assertThrows(IllegalArgumentException.class, () -> new JsonPointer.RefToken(-1));
+        assertThrows(IllegalArgumentException.class, () -> JsonPointer.ROOT.append(-2));
+        assertEquals(new JsonPointer.RefToken("-"), new JsonPointer.RefToken(JsonPointer.LAST_INDEX));
+        assertEquals("0", new JsonPointer.RefToken(0).toString());
+    }
+}
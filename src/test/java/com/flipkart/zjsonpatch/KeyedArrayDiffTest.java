@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class KeyedArrayDiffTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final EnumSet<DiffFlags> FLAGS = EnumSet.of(DiffFlags.TREAT_ARRAYS_AS_SETS);
+
+    @Test
+    public void joinPairsElementsById() throws IOException {
+        JsonNode source = MAPPER.readTree("[{\"id\":\"a\"},{\"id\":\"b\"},{\"id\":\"c\"}]");
+        JsonNode target = MAPPER.readTree("[{\"id\":\"c\"},{\"id\":\"d\"},{\"id\":\"a\"}]");
+
+        assertArrayEquals(new int[]{2, KeyedArrayDiff.UNMATCHED, 0}, KeyedArrayDiff.join(source, target, "id"));
+    }
+
+    @Test
+    public void joinRejectsDuplicateOrMissingIds() throws IOException {
+        JsonNode keyed = MAPPER.readTree("[{\"id\":\"a\"},{\"id\":\"b\"}]");
+
+        assertNull(KeyedArrayDiff.join(keyed, MAPPER.readTree("[{\"id\":\"a\"},{\"id\":\"a\"}]"), "id"));
+        assertNull(KeyedArrayDiff.join(MAPPER.readTree("[{\"id\":\"b\"},{\"id\":\"b\"}]"), keyed, "id"));
+        assertNull(KeyedArrayDiff.join(keyed, MAPPER.readTree("[{\"id\":\"a\"},{\"name\":\"b\"}]"), "id"));
+        assertNull(KeyedArrayDiff.join(keyed, MAPPER.readTree("[{\"id\":\"a\"},\"b\"]"), "id"));
+    }
+
+    @Test
+    public void idsDoNotLeakIntoLaterObjects() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"items\":[{\"id\":\"b\",\"v\":1}],\"meta\":{\"b\":1}}");
+        JsonNode target = MAPPER.readTree("{\"items\":[{\"id\":\"b\",\"v\":2}],\"meta\":{\"b\":2}}");
+
+        JsonNode patch = JsonDiff.asJson(source, target, FLAGS);
+
+        assertEquals("[{\"op\":\"replace\",\"path\":\"/items/0/v\",\"value\":2},"
+                + "{\"op\":\"replace\",\"path\":\"/meta/b\",\"value\":2}]", patch.toString());
+    }
+
+    @Test
+    public void unkeyableArraysAreComparedByPosition() throws IOException {
+        JsonNode source = MAPPER.readTree("[{\"id\":\"a\"},{\"v\":1}]");
+        JsonNode target = MAPPER.readTree("[{\"id\":\"a\"},{\"v\":2}]");
+
+        JsonNode patch = JsonDiff.asJson(source, target, FLAGS);
+
+        assertEquals("[{\"op\":\"replace\",\"path\":\"/1/v\",\"value\":2}]", patch.toString());
+    }
+
+    @Test
+    public void patchTurnsSourceIntoTargetWhenRetainedElementsKeepTheirOrder() {
+        Random random = new Random(29);
+        for (int i = 0; i < 200; i++) {
+            ArrayNode source = randomSet(random, 2);
+            ArrayNode target = edit(random, source, 2);
+
+            JsonNode patch = JsonDiff.asJson(source, target, FLAGS);
+
+            assertEquals(patch.toString(), target, JsonPatch.apply(patch, source));
+        }
+    }
+
+    @Test
+    public void parallelDiffMatchesSequentialDiff() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random random = new Random(31);
+            for (int i = 0; i < 100; i++) {
+                ArrayNode source = randomSet(random, 2);
+                ArrayNode target = edit(random, source, 2);
+
+                JsonNode expected = new JsonDiff(FLAGS, 1).diff(source, target);
+                JsonNode actual = new JsonDiff(FLAGS, 1, pool, 4).diff(source, target);
+
+                assertEquals(expected.toString(), actual.toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static ArrayNode randomSet(Random random, int depth) {
+        ArrayNode array = MAPPER.createArrayNode();
+        int size = random.nextInt(8);
+        for (int i = 0; i < size; i++)
+            array.add(element(random, "e" + i, depth));
+        return array;
+    }
+
+    private static ObjectNode element(Random random, String id, int depth) {
+        ObjectNode element = MAPPER.createObjectNode();
+        element.put("id", id);
+        element.put("v", random.nextInt(3));
+        if (depth > 0)
+            element.set("children", randomSet(random, depth - 1));
+        return element;
+    }
+
+    /** Drops, changes and inserts elements, keeping the retained ones in their source order. */
+    private static ArrayNode edit(Random random, ArrayNode source, int depth) {
+        ArrayNode target = MAPPER.createArrayNode();
+        int added = 0;
+        for (JsonNode element : source) {
+            if (random.nextInt(4) == 0)
+                target.add(element(random, "n" + added++, depth));
+            int action = random.nextInt(4);
+            if (action == 0)
+                continue;
+            ObjectNode copy = (ObjectNode) element.deepCopy();
+            if (action == 1)
+                copy.put("v", random.nextInt(3));
+            if (depth > 0)
+                copy.set("children", edit(random, (ArrayNode) element.get("children"), depth - 1));
+            target.add(copy);
+        }
+        if (random.nextBoolean())
+            target.add(element(random, "n" + added, depth));
+        return target;
+    }
+}
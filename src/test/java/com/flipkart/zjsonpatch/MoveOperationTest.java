@@ -18,6 +18,7 @@ package com.flipkart.zjsonpatch;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.junit.Test;
 import org.junit.runners.Parameterized;
 
@@ -25,6 +26,7 @@ import java.io.IOException;
 import java.util.Collection;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -60,4 +62,24 @@ public class MoveOperationTest extends AbstractTest {
 
         assertThat(diff, equalTo(patch));
     }
+
+    @Test
+    public void testMovesOnReshuffledLargeArrayApplyCleanly() {
+        ArrayNode source = MAPPER.createArrayNode();
+        for (int i = 0; i < 4000; i++) {
+            source.addObject().put("id", i).put("name", "item" + i);
+        }
+        ArrayNode target = source.deepCopy();
+        for (int i = 0; i < 1000; i++) {
+            // move every fourth element to the end
+            target.add(target.remove(i * 3));
+        }
+
+        JsonNode diff = JsonDiff.asJson(source, target);
+
+        for (JsonNode op : diff) {
+            assertEquals("move", op.get("op").textValue());
+        }
+        assertThat(JsonPatch.apply(diff, source), equalTo((JsonNode) target));
+    }
 }
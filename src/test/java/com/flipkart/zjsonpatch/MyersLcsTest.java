@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MyersLcsTest {
+
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    @Test
+    public void lengthMatchesDynamicProgrammingOnRandomArrays() {
+        Random random = new Random(42);
+        MyersLcs myersLcs = new MyersLcs(new NodeDigests());
+        for (int i = 0; i < 2000; i++) {
+            ArrayNode first = randomArray(random, random.nextInt(12), 4);
+            ArrayNode second = randomArray(random, random.nextInt(12), 4);
+
+            List<JsonNode> lcs = myersLcs.longestCommonSubsequence(first, second);
+
+            assertEquals(lcsLength(first, second), lcs.size());
+            assertTrue(isSubsequence(lcs, first));
+            assertTrue(isSubsequence(lcs, second));
+        }
+    }
+
+    @Test
+    public void largeArraysWithFewEdits() {
+        ArrayNode first = FACTORY.arrayNode();
+        ArrayNode second = FACTORY.arrayNode();
+        for (int i = 0; i < 20000; i++) {
+            first.add(i);
+            if (i % 5000 != 0)
+                second.add(i);
+        }
+        second.add(-1);
+
+        List<JsonNode> lcs = new MyersLcs(new NodeDigests()).longestCommonSubsequence(first, second);
+
+        assertEquals(19996, lcs.size());
+    }
+
+    @Test
+    public void appendOnlyKeepsWholeSource() {
+        ArrayNode first = FACTORY.arrayNode();
+        ArrayNode second = FACTORY.arrayNode();
+        for (int i = 0; i < 100000; i++) {
+            first.add(FACTORY.objectNode().put("id", i));
+            second.add(FACTORY.objectNode().put("id", i));
+        }
+        second.add(FACTORY.objectNode().put("id", -1));
+        second.insert(0, FACTORY.objectNode().put("id", -2));
+
+        List<JsonNode> lcs = new MyersLcs(new NodeDigests()).longestCommonSubsequence(first, second);
+
+        assertEquals(100000, lcs.size());
+        assertEquals(first.get(0), lcs.get(0));
+        assertEquals(first.get(99999), lcs.get(99999));
+    }
+
+    @Test
+    public void emptyArraysHaveEmptyLcs() {
+        ArrayNode empty = FACTORY.arrayNode();
+        ArrayNode nonEmpty = FACTORY.arrayNode().add(1).add(2);
+        MyersLcs myersLcs = new MyersLcs(new NodeDigests());
+
+        assertEquals(0, myersLcs.longestCommonSubsequence(empty, nonEmpty).size());
+        assertEquals(0, myersLcs.longestCommonSubsequence(nonEmpty, empty).size());
+        assertEquals(0, myersLcs.longestCommonSubsequence(empty, empty).size());
+    }
+
+    private static ArrayNode randomArray(Random random, int size, int range) {
+        ArrayNode array = FACTORY.arrayNode();
+        for (int i = 0; i < size; i++)
+            array.add(random.nextInt(range));
+        return array;
+    }
+
+    private static int lcsLength(JsonNode a, JsonNode b) {
+        int[][] table = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i++) {
+            for (int j = 1; j <= b.size(); j++) {
+                if (a.get(i - 1).equals(b.get(j - 1)))
+                    table[i][j] = table[i - 1][j - 1] + 1;
+                else
+                    table[i][j] = Math.max(table[i - 1][j], table[i][j - 1]);
+            }
+        }
+        return table[a.size()][b.size()];
+    }
+
+    private static boolean isSubsequence(List<JsonNode> subsequence, JsonNode array) {
+        int idx = 0;
+        for (JsonNode node : array) {
+            if (idx < subsequence.size() && subsequence.get(idx).equals(node))
+                idx++;
+        }
+        return idx == subsequence.size();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NodeDigestsTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void equalNodesHaveEqualDigestsRegardlessOfFieldOrder() throws IOException {
+        JsonNode first = MAPPER.readTree("{\"a\": [1, {\"b\": \"x\", \"c\": null}], \"d\": true}");
+        JsonNode second = MAPPER.readTree("{\"d\": true, \"a\": [1, {\"c\": null, \"b\": \"x\"}]}");
+        NodeDigests digests = new NodeDigests();
+
+        assertEquals(digests.digest(first), digests.digest(second));
+        assertTrue(digests.equal(first, second));
+        assertEquals(7, digests.size(first));
+    }
+
+    @Test
+    public void uncachedDigestsMatchCachedOnesAndAreNotStored() throws IOException {
+        JsonNode first = MAPPER.readTree("{\"a\": [1, {\"b\": \"x\"}], \"c\": {\"d\": []}}");
+        JsonNode second = MAPPER.readTree("{\"c\": {\"d\": []}, \"a\": [1, {\"b\": \"x\"}]}");
+        NodeDigests cached = new NodeDigests();
+        NodeDigests uncached = new NodeDigests();
+        uncached.setCaching(false);
+
+        assertEquals(cached.digest(first), uncached.digest(first));
+        assertEquals(cached.size(first), uncached.size(first));
+        assertTrue(uncached.equal(first, second));
+        assertFalse(uncached.equal(first, MAPPER.readTree("{\"a\": [1], \"c\": {\"d\": []}}")));
+        assertEquals(5, cached.cachedEntries());
+        assertEquals(0, uncached.cachedEntries());
+    }
+
+    @Test
+    public void differentNodesAreNotEqual() throws IOException {
+        NodeDigests digests = new NodeDigests();
+
+        assertFalse(digests.equal(MAPPER.readTree("[1, 2]"), MAPPER.readTree("[2, 1]")));
+        assertFalse(digests.equal(MAPPER.readTree("{\"a\": 1}"), MAPPER.readTree("{\"a\": \"1\"}")));
+        assertFalse(digests.equal(MAPPER.readTree("[]"), MAPPER.readTree("{}")));
+        assertFalse(digests.equal(MAPPER.readTree("[]"), null));
+        assertNotEquals(digests.digest(MAPPER.readTree("[[1], 2]")), digests.digest(MAPPER.readTree("[1, [2]]")));
+    }
+
+    @Test
+    public void digestsAgreeWithEqualsOnGeneratedData() {
+        Random random = new Random(7);
+        NodeDigests digests = new NodeDigests();
+        for (int i = 0; i < 500; i++) {
+            JsonNode first = TestDataGenerator.generate(random.nextInt(3));
+            JsonNode second = TestDataGenerator.generate(random.nextInt(3));
+
+            assertEquals(first.equals(second), digests.equal(first, second));
+            assertTrue(digests.equal(first, first.deepCopy()));
+        }
+    }
+
+    @Test
+    public void keysMatchStructurallyEqualNodes() throws IOException {
+        NodeDigests digests = new NodeDigests();
+        Map<NodeDigests.Key, String> map = new HashMap<NodeDigests.Key, String>();
+        map.put(digests.key(MAPPER.readTree("{\"a\": [1, 2]}")), "found");
+
+        assertEquals("found", map.get(digests.key(MAPPER.readTree("{\"a\": [1, 2]}"))));
+        assertEquals(null, map.get(digests.key(MAPPER.readTree("{\"a\": [2, 1]}"))));
+    }
+}
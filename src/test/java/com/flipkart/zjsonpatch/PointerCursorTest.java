@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PointerCursorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void resumesFromTheCommonPrefix() throws Exception {
+        JsonNode document = MAPPER.readTree("{\"a\": {\"b\": [{\"c\": 1}, {\"c\": 2}]}, \"d\": 3}");
+        PointerCursor cursor = new PointerCursor();
+
+        JsonPointer first = JsonPointer.parse("/a/b/0/c");
+        assertEquals(1, cursor.resolve(document, first, first.size()).intValue());
+        assertSame(document.get("a").get("b"), cursor.node(2));
+
+        JsonPointer second = JsonPointer.parse("/a/b/1/c");
+        assertEquals(2, cursor.resolve(document, second, second.size()).intValue());
+        assertSame(document.get("a").get("b").get(1), cursor.resolve(document, second, second.size() - 1));
+
+        JsonPointer third = JsonPointer.parse("/d");
+        assertEquals(3, cursor.resolve(document, third, third.size()).intValue());
+        assertSame(document, cursor.resolve(document, third, 0));
+    }
+
+    @Test
+    public void failuresMatchEvaluation() throws Exception {
+        JsonNode document = MAPPER.readTree("{\"a\": {\"b\": [1]}}");
+        PointerCursor cursor = new PointerCursor();
+        cursor.resolve(document, JsonPointer.parse("/a/b/0"), 3);
+
+        JsonPointer missing = JsonPointer.parse("/a/b/1/c");
+        try {
+            cursor.resolve(document, missing, missing.size());
+            fail("index 1 is out of bounds");
+        } catch (JsonPointerEvaluationException e) {
+            try {
+                missing.evaluate(document);
+                fail("index 1 is out of bounds");
+            } catch (JsonPointerEvaluationException expected) {
+                assertEquals(expected.getMessage(), e.getMessage());
+                assertEquals(expected.getPath(), e.getPath());
+            }
+        }
+
+        assertEquals(1, cursor.resolve(document, JsonPointer.parse("/a/b/0"), 3).intValue());
+    }
+
+    @Test
+    public void patchesSharingPrefixesApplyAsBefore() throws IOException {
+        String ops = "{\"op\":\"replace\",\"path\":\"/o/l/1/q\",\"value\":20}," +
+                "{\"op\":\"remove\",\"path\":\"/o/l/0\"}," +
+                "{\"op\":\"replace\",\"path\":\"/o/l/0/q\",\"value\":21}," +
+                "{\"op\":\"add\",\"path\":\"/o/l/0\",\"value\":{\"q\":0}}," +
+                "{\"op\":\"test\",\"path\":\"/o/l/1/q\",\"value\":21}," +
+                "{\"op\":\"move\",\"from\":\"/o/l/2\",\"path\":\"/o/l/0/r\"}," +
+                "{\"op\":\"replace\",\"path\":\"/o/l/0/r/q\",\"value\":30}";
+        String rootReplaced = ",{\"op\":\"replace\",\"path\":\"\",\"value\":{\"o\":{\"l\":[{\"q\":5}]}}}," +
+                "{\"op\":\"replace\",\"path\":\"/o/l/0/q\",\"value\":50}";
+        JsonNode modified = MAPPER.readTree("{\"o\": {\"l\": [{\"q\": 0, \"r\": {\"q\": 30}}, {\"q\": 21}]}}");
+        JsonNode expected = modified;
+
+        for (String patch : new String[]{"[" + ops + "]", "[" + ops + rootReplaced + "]"}) {
+            JsonNode source = MAPPER.readTree("{\"o\": {\"l\": [{\"q\": 1}, {\"q\": 2}, {\"q\": 3}]}}");
+            JsonNode copy = JsonPatch.apply(MAPPER.readTree(patch), source);
+            JsonNode shared = JsonPatch.applyCopyOnWrite(MAPPER.readTree(patch), source);
+            JsonPatch.applyInPlace(MAPPER.readTree(patch), source);
+
+            assertEquals(expected, copy);
+            assertEquals(expected, shared);
+            // Replacing the root can't be done in place
+            assertEquals(modified, source);
+            expected = MAPPER.readTree("{\"o\": {\"l\": [{\"q\": 50}]}}");
+        }
+    }
+}
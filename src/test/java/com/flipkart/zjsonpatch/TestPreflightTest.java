@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestPreflightTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void failingLeadingTestRejectsPatchWithoutCopying() throws IOException {
+        CountingNode source = new CountingNode();
+        source.put("version", 2).put("name", "a");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"test\",\"path\":\"/version\",\"value\":1}," +
+                "{\"op\":\"replace\",\"path\":\"/name\",\"value\":\"b\"}]");
+
+        try {
+            JsonPatch.apply(patch, source);
+            fail("test operation should fail");
+        } catch (JsonPatchApplicationException e) {
+            assertEquals(Operation.TEST, e.operation);
+        }
+        assertEquals(0, source.copies);
+    }
+
+    @Test
+    public void failingTestAfterUnrelatedChangeRejectsPatchWithoutCopying() throws IOException {
+        CountingNode source = new CountingNode();
+        source.put("version", 2).put("name", "a");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/name\",\"value\":\"b\"}," +
+                "{\"op\":\"test\",\"path\":\"/version\",\"value\":1}]");
+
+        try {
+            JsonPatch.apply(patch, source);
+            fail("test operation should fail");
+        } catch (JsonPatchApplicationException e) {
+            assertEquals(Operation.TEST, e.operation);
+            assertEquals(JsonPointer.parse("/version"), e.path);
+        }
+        assertEquals(0, source.copies);
+        assertEquals("a", source.get("name").textValue());
+    }
+
+    @Test
+    public void errorOfAnEarlierOperationTakesPrecedence() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"version\": 2}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/missing\",\"value\":0}," +
+                "{\"op\":\"test\",\"path\":\"/version\",\"value\":1}]");
+
+        try {
+            JsonPatch.apply(patch, source);
+            fail("replace operation should fail");
+        } catch (JsonPatchApplicationException e) {
+            assertEquals(Operation.REPLACE, e.operation);
+        }
+    }
+
+    @Test
+    public void testAfterChangeOfTestedValueIsNotHoisted() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": {\"b\": 1}, \"c\": [1, 2, 3]}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/a/b\",\"value\":2}," +
+                "{\"op\":\"test\",\"path\":\"/a\",\"value\":{\"b\":2}}," +
+                "{\"op\":\"remove\",\"path\":\"/c/0\"}," +
+                "{\"op\":\"test\",\"path\":\"/c/1\",\"value\":3}]");
+
+        JsonNode expected = MAPPER.readTree("{\"a\": {\"b\": 2}, \"c\": [2, 3]}");
+        assertEquals(expected, JsonPatch.apply(patch, source));
+        assertEquals(expected, JsonPatch.applyCopyOnWrite(patch, source));
+    }
+
+    private static final class CountingNode extends ObjectNode {
+        private int copies;
+
+        CountingNode() {
+            super(JsonNodeFactory.instance);
+        }
+
+        @Override
+        public ObjectNode deepCopy() {
+            copies++;
+            return super.deepCopy();
+        }
+    }
+}
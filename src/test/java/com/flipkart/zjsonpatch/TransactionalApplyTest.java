@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TransactionalApplyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void successfulPatchIsAppliedInPlace() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": [1, 2], \"b\": {\"c\": 1}}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"move\",\"from\":\"/b/c\",\"path\":\"/a/0\"}," +
+                "{\"op\":\"remove\",\"path\":\"/b\"},{\"op\":\"add\",\"path\":\"/d\",\"value\":true}]");
+
+        JsonPatch.applyInPlaceAtomically(patch, source);
+
+        assertEquals(MAPPER.readTree("{\"a\": [1, 1, 2], \"d\": true}"), source);
+    }
+
+    @Test
+    public void failedPatchLeavesDocumentExactlyAsItWas() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": [1, 2, 3], \"b\": {\"x\": 1, \"y\": 2, \"z\": 3}, \"c\": \"s\"}");
+        String before = source.toString();
+        JsonNode patch = MAPPER.readTree("[" +
+                "{\"op\":\"remove\",\"path\":\"/b/x\"}," +
+                "{\"op\":\"add\",\"path\":\"/b/w\",\"value\":0}," +
+                "{\"op\":\"move\",\"from\":\"/b/y\",\"path\":\"/a/1\"}," +
+                "{\"op\":\"copy\",\"from\":\"/a\",\"path\":\"/b/x\"}," +
+                "{\"op\":\"replace\",\"path\":\"/a/0\",\"value\":{}}," +
+                "{\"op\":\"remove\",\"path\":\"/a/3\"}," +
+                "{\"op\":\"replace\",\"path\":\"/c\",\"value\":null}," +
+                "{\"op\":\"test\",\"path\":\"/c\",\"value\":\"s\"}]");
+
+        try {
+            JsonPatch.applyInPlaceAtomically(patch, source);
+            fail("test operation should fail");
+        } catch (JsonPatchApplicationException e) {
+            assertEquals(Operation.TEST, e.operation);
+        }
+
+        assertEquals(before, source.toString());
+    }
+
+    @Test
+    public void randomFailedPatchesAreRolledBack() {
+        Random random = new Random(31);
+        for (int i = 0; i < 1000; i++) {
+            ObjectNode source = MAPPER.createObjectNode();
+            source.set("doc", randomDocument(random, 4));
+            ObjectNode target = MAPPER.createObjectNode();
+            target.set("doc", randomDocument(random, 4));
+            ArrayNode patch = (ArrayNode) JsonDiff.asJson(source, target, EnumSet.noneOf(DiffFlags.class));
+            patch.insert(random.nextInt(patch.size() + 1), MAPPER.createObjectNode()
+                    .put("op", "test").put("path", "/doc").put("value", "never"));
+
+            String before = source.toString();
+            try {
+                CompiledPatch compiled = JsonPatch.compile(patch);
+                compiled.applyInPlaceAtomically(source);
+                fail("test operation should fail");
+            } catch (JsonPatchApplicationException e) {
+                assertEquals(patch.toString(), before, source.toString());
+            }
+        }
+    }
+
+    private static JsonNode randomDocument(Random random, int depth) {
+        int kind = depth <= 0 ? 0 : random.nextInt(3);
+        if (kind == 1) {
+            ObjectNode node = MAPPER.createObjectNode();
+            int size = random.nextInt(6);
+            for (int i = 0; i < size; i++) {
+                node.set("f" + random.nextInt(8), randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        if (kind == 2) {
+            ArrayNode node = MAPPER.createArrayNode();
+            int size = random.nextInt(6);
+            for (int i = 0; i < size; i++) {
+                node.add(randomDocument(random, depth - 1));
+            }
+            return node;
+        }
+        return MAPPER.getNodeFactory().numberNode(random.nextInt(4));
+    }
+}
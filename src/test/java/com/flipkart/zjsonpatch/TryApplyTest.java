@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 flipkart.com zjsonpatch.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.flipkart.zjsonpatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TryApplyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void successfulPatchReturnsTarget() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": 1}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"test\",\"path\":\"/a\",\"value\":1}," +
+                "{\"op\":\"add\",\"path\":\"/b\",\"value\":2}]");
+
+        JsonPatchResult result = JsonPatch.tryApply(patch, source);
+
+        assertTrue(result.isSuccess());
+        assertEquals(MAPPER.readTree("{\"a\": 1, \"b\": 2}"), result.getTarget());
+        assertEquals(-1, result.getIndex());
+        assertNull(result.getOperation());
+        assertEquals(MAPPER.readTree("{\"a\": 1}"), source);
+    }
+
+    @Test
+    public void failedTestIsReported() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": 1}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/b\",\"value\":2}," +
+                "{\"op\":\"test\",\"path\":\"/a\",\"value\":2}]");
+
+        JsonPatchResult result = JsonPatch.tryApply(patch, source);
+
+        assertFalse(result.isSuccess());
+        assertNull(result.getTarget());
+        assertEquals(1, result.getIndex());
+        assertEquals("test", result.getOperation());
+        assertEquals("/a", result.getPath());
+        assertEquals("Expected value 2 but found value 1", result.getReason());
+    }
+
+    @Test
+    public void missingPathIsReportedInPlace() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": {\"b\": 1}}");
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"remove\",\"path\":\"/a/b\"}," +
+                "{\"op\":\"copy\",\"from\":\"/a/b\",\"path\":\"/c\"}]");
+
+        JsonPatchResult result = JsonPatch.tryApplyInPlace(patch, source);
+
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getIndex());
+        assertEquals("copy", result.getOperation());
+        assertEquals("/a", result.getPath());
+        assertEquals(MAPPER.readTree("{\"a\": {}}"), source);
+    }
+
+    @Test
+    public void fieldOfArrayIsReported() throws IOException {
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"remove\",\"path\":\"/0/d\"}]");
+
+        JsonPatchResult result = JsonPatch.tryApply(patch, MAPPER.readTree("[[1]]"));
+
+        assertFalse(result.isSuccess());
+        assertEquals("remove", result.getOperation());
+        assertEquals("/0", result.getPath());
+        assertEquals("Can't reference field \"d\" on array", result.getReason());
+    }
+
+    @Test
+    public void replacingPastTheEndIsReported() throws IOException {
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"replace\",\"path\":\"/-\",\"value\":1}]");
+
+        JsonPatchResult result = JsonPatch.tryApply(patch, MAPPER.readTree("[0]"));
+
+        assertFalse(result.isSuccess());
+        assertEquals("replace", result.getOperation());
+        assertEquals("Array index - out of bounds", result.getReason());
+    }
+
+    @Test
+    public void addingFieldToArrayIsReportedInPlace() throws IOException {
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"add\",\"path\":\"/a/b\",\"value\":1}]");
+
+        JsonPatchResult result = JsonPatch.tryApplyInPlace(patch, MAPPER.readTree("{\"a\": []}"));
+
+        assertFalse(result.isSuccess());
+        assertEquals("add", result.getOperation());
+        assertEquals("/a", result.getPath());
+    }
+
+    @Test
+    public void throwingApiKeepsStackTrace() throws IOException {
+        JsonNode patch = MAPPER.readTree("[{\"op\":\"test\",\"path\":\"/a\",\"value\":2}]");
+        try {
+            JsonPatch.apply(patch, MAPPER.readTree("{\"a\": 1}"));
+            fail("test operation should fail");
+        } catch (JsonPatchApplicationException e) {
+            assertTrue(e.getStackTrace().length > 0);
+            assertEquals("[TEST Operation] Expected value 2 but found value 1 at /a", e.toString());
+        }
+    }
+
+    @Test
+    public void reasonsMatchTheMessagesOfThrownExceptions() throws IOException {
+        JsonNode source = MAPPER.readTree("{\"a\": [1], \"s\": \"x\"}");
+        String[] operations = {
+                "{\"op\":\"test\",\"path\":\"/a\",\"value\":{}}",
+                "{\"op\":\"replace\",\"path\":\"/b\",\"value\":1}",
+                "{\"op\":\"remove\",\"path\":\"/a/3\"}",
+                "{\"op\":\"add\",\"path\":\"/a/5\",\"value\":1}",
+                "{\"op\":\"add\",\"path\":\"/s/t\",\"value\":1}",
+                "{\"op\":\"remove\",\"path\":\"\"}",
+                "{\"op\":\"copy\",\"from\":\"/a/7\",\"path\":\"/c\"}",
+                "{\"op\":\"copy\",\"from\":\"/b/c\",\"path\":\"/c\"}",
+                "{\"op\":\"copy\",\"from\":\"/s/t\",\"path\":\"/c\"}"
+        };
+        for (String operation : operations) {
+            JsonNode patch = MAPPER.readTree("[" + operation + "]");
+            String message = null;
+            try {
+                JsonPatch.apply(patch, source);
+                fail(operation + " should fail");
+            } catch (JsonPatchApplicationException e) {
+                message = e.getMessage();
+            }
+
+            assertEquals(operation, message, JsonPatch.tryApply(patch, source).getReason());
+        }
+    }
+
+    @Test(expected = InvalidJsonPatchException.class)
+    public void malformedPatchIsRejected() throws IOException {
+        JsonPatch.tryApply(MAPPER.readTree("[{\"op\":\"test\"}]"), MAPPER.readTree("{}"));
+    }
+}